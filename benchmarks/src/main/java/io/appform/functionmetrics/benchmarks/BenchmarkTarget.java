@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.appform.functionmetrics.benchmarks;
+
+import io.appform.functionmetrics.MetricTerm;
+import io.appform.functionmetrics.MonitoredFunction;
+
+/**
+ * Functions being measured. All of them do the same trivial amount of work, so that differences between them are
+ * down to instrumentation overhead.
+ */
+public class BenchmarkTarget {
+
+    public long plain(long value) {
+        return work(value);
+    }
+
+    @MonitoredFunction
+    public long monitored(long value) {
+        return work(value);
+    }
+
+    @MonitoredFunction
+    public long monitoredWithTerm(@MetricTerm String tenant, long value) {
+        return work(value);
+    }
+
+    private static long work(long value) {
+        return value * 31 + 17;
+    }
+}
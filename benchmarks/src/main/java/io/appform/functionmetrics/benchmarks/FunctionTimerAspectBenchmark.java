@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.appform.functionmetrics.benchmarks;
+
+import com.codahale.metrics.MetricRegistry;
+import io.appform.functionmetrics.FunctionMetricsManager;
+import io.appform.functionmetrics.Options;
+import io.appform.functionmetrics.TimerReservoirType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures per call overhead of {@link io.appform.functionmetrics.MonitoredFunction} against an un-instrumented call.
+ * {@link FunctionMetricsManager} can be initialized only once per JVM, so every parameter combination runs in its own
+ * fork.
+ * NOTE: With parameter capture enabled, cache optimisation is always turned on by the manager.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FunctionTimerAspectBenchmark {
+    private static final String[] TENANTS = {"alpha", "beta", "gamma", "delta"};
+
+    @Param({"false", "true"})
+    public boolean parameterCapture;
+
+    @Param({"false", "true"})
+    public boolean disableCacheOptimisation;
+
+    @Param({"SLIDING", "DECAYING"})
+    public TimerReservoirType reservoirType;
+
+    private final BenchmarkTarget target = new BenchmarkTarget();
+
+    @State(Scope.Thread)
+    public static class CallState {
+        long value;
+        int tenant;
+
+        String nextTenant() {
+            tenant = (tenant + 1) & (TENANTS.length - 1);
+            return TENANTS[tenant];
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        FunctionMetricsManager.initialize("benchmark",
+                                          new MetricRegistry(),
+                                          new Options.OptionsBuilder()
+                                                  .enableParameterCapture(parameterCapture)
+                                                  .disableCacheOptimisation(disableCacheOptimisation)
+                                                  .timerReservoirType(reservoirType)
+                                                  .build());
+    }
+
+    @Benchmark
+    public long baseline(CallState state) {
+        return target.plain(state.value++);
+    }
+
+    @Benchmark
+    public long monitored(CallState state) {
+        return target.monitored(state.value++);
+    }
+
+    @Benchmark
+    public long monitoredWithTerm(CallState state) {
+        return target.monitoredWithTerm(state.nextTenant(), state.value++);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics.benchmarks;
+
+import io.appform.functionmetrics.MethodData;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.runtime.reflect.Factory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares looking up cached method data by the long string of the signature, as the aspect used to, against looking
+ * it up by the identity of the join point static part. The static part is built the same way woven code builds it.
+ * Run with {@code java -jar target/benchmarks.jar MethodDataLookupBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MethodDataLookupBenchmark {
+    private final Map<String, MethodData> bySignature = new ConcurrentHashMap<>();
+    private final Map<JoinPoint.StaticPart, MethodData> byStaticPart = new ConcurrentHashMap<>();
+    private JoinPoint.StaticPart staticPart;
+
+    @Setup
+    public void setup() {
+        final Factory factory = new Factory("BenchmarkTarget.java", BenchmarkTarget.class);
+        staticPart = factory.makeSJP(JoinPoint.METHOD_EXECUTION,
+                                     factory.makeMethodSig("1", "monitoredWithTerm", BenchmarkTarget.class.getName(),
+                                                           "java.lang.String:long", "tenant:value", "", "long"),
+                                     1);
+        final MethodData methodData = new MethodData("BenchmarkTarget", "monitoredWithTerm",
+                                                     Collections.singletonList(0));
+        bySignature.put(staticPart.getSignature().toLongString(), methodData);
+        byStaticPart.put(staticPart, methodData);
+    }
+
+    @Benchmark
+    public MethodData signatureKey() {
+        return bySignature.get(staticPart.getSignature().toLongString());
+    }
+
+    @Benchmark
+    public MethodData staticPartKey() {
+        return byStaticPart.get(staticPart);
+    }
+}
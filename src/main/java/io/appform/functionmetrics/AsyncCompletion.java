@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.BiConsumer;
+
+/**
+ * Records an invocation of a function whose result completes asynchronously, once the result completes.
+ * Only the first completion is recorded.
+ */
+final class AsyncCompletion implements BiConsumer<Object, Throwable> {
+    private static final AtomicIntegerFieldUpdater<AsyncCompletion> RECORDED
+            = AtomicIntegerFieldUpdater.newUpdater(AsyncCompletion.class, "recorded");
+
+    private final ConfigSnapshot config;
+    private final MethodData methodData;
+    private final MethodTimers parameterTimers;
+    private final long start;
+    private volatile int recorded;
+
+    AsyncCompletion(ConfigSnapshot config, MethodData methodData, MethodTimers parameterTimers, long start) {
+        this.config = config;
+        this.methodData = methodData;
+        this.parameterTimers = parameterTimers;
+        this.start = start;
+    }
+
+    @Override
+    public void accept(Object result, Throwable error) {
+        if (error == null) {
+            complete(TimerDomain.SUCCESS, null);
+        }
+        else {
+            // Dependent stages wrap the original exception
+            complete(TimerDomain.FAILURE,
+                     error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+        }
+    }
+
+    void complete(TimerDomain outcome, Throwable error) {
+        if (RECORDED.compareAndSet(this, 0, 1)) {
+            InvocationRecorder.record(outcome, error, config, methodData, parameterTimers, start);
+        }
+    }
+
+    /**
+     * Records an invocation whose result was dropped without completing, as a success without a duration, like an
+     * invocation that was not sampled. This leaves the in-flight count, and counts the invocation in metrics that
+     * can count invocations that are not timed.
+     */
+    void abandon() {
+        if (RECORDED.compareAndSet(this, 0, 1)) {
+            InvocationRecorder.record(TimerDomain.SUCCESS, null, config, methodData, parameterTimers,
+                                      InvocationRecorder.NOT_SAMPLED);
+        }
+    }
+}
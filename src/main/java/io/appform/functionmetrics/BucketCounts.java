@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.Reservoir;
+
+/**
+ * A {@link Reservoir} that counts values in {@link HistogramBuckets}, and can report counts accumulated over its
+ * lifetime rather than only over the intervals covered by snapshots. Used by {@link DeltaReporter} to export bucket
+ * deltas without taking snapshots.
+ */
+public interface BucketCounts {
+    HistogramBuckets getBuckets();
+
+    /**
+     * Adds running totals per bucket to the given array. Totals cover the intervals still part of snapshots and all
+     * intervals closed after the first call to this method, so the difference between two calls is the number of
+     * values recorded in between.
+     * @param counts Array with one element per bucket of {@link #getBuckets()}
+     */
+    void addTotalCounts(long[] counts);
+}
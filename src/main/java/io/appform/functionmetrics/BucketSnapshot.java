@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.Snapshot;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * A {@link Snapshot} computed from bucket counts of a {@link HistogramBuckets} layout.
+ * Values are accurate to the precision of the layout. {@link #getValues()} returns one representative value per
+ * non-empty bucket rather than every recorded value, while {@link #size()} returns the number of recorded values.
+ */
+public class BucketSnapshot extends Snapshot {
+    private final HistogramBuckets buckets;
+    private final long[] counts;
+    private final long totalCount;
+    private final int minIndex;
+    private final int maxIndex;
+
+    public BucketSnapshot(HistogramBuckets buckets, long[] counts) {
+        this.buckets = buckets;
+        this.counts = counts;
+        long total = 0;
+        int min = -1;
+        int max = -1;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                total += counts[i];
+                if (min < 0) {
+                    min = i;
+                }
+                max = i;
+            }
+        }
+        this.totalCount = total;
+        this.minIndex = min;
+        this.maxIndex = max;
+    }
+
+    @Override
+    public double getValue(double quantile) {
+        if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile)) {
+            throw new IllegalArgumentException(quantile + " is not in [0..1]");
+        }
+        if (totalCount == 0) {
+            return 0.0;
+        }
+        if (quantile == 0.0) {
+            return getMin();
+        }
+        final long countAtQuantile = Math.max(1, (long) Math.ceil(quantile * totalCount));
+        long cumulative = 0;
+        for (int i = minIndex; i <= maxIndex; i++) {
+            cumulative += counts[i];
+            if (cumulative >= countAtQuantile) {
+                return buckets.highestValue(i);
+            }
+        }
+        return getMax();
+    }
+
+    @Override
+    public long[] getValues() {
+        if (totalCount == 0) {
+            return new long[0];
+        }
+        return IntStream.rangeClosed(minIndex, maxIndex)
+                .filter(i -> counts[i] > 0)
+                .mapToLong(buckets::medianValue)
+                .toArray();
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, totalCount);
+    }
+
+    @Override
+    public long getMax() {
+        return totalCount == 0 ? 0 : buckets.highestValue(maxIndex);
+    }
+
+    @Override
+    public double getMean() {
+        if (totalCount == 0) {
+            return 0.0;
+        }
+        double sum = 0;
+        for (int i = minIndex; i <= maxIndex; i++) {
+            sum += (double) buckets.medianValue(i) * counts[i];
+        }
+        return sum / totalCount;
+    }
+
+    @Override
+    public long getMin() {
+        return totalCount == 0 ? 0 : buckets.lowestValue(minIndex);
+    }
+
+    @Override
+    public double getStdDev() {
+        if (totalCount <= 1) {
+            return 0.0;
+        }
+        final double mean = getMean();
+        double variance = 0;
+        for (int i = minIndex; i <= maxIndex; i++) {
+            final double diff = buckets.medianValue(i) - mean;
+            variance += diff * diff * counts[i];
+        }
+        return Math.sqrt(variance / totalCount);
+    }
+
+    @Override
+    public void dump(OutputStream output) {
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+            for (int i = minIndex; totalCount > 0 && i <= maxIndex; i++) {
+                if (counts[i] > 0) {
+                    out.printf("%d %d%n", buckets.medianValue(i), counts[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Bucket layout the counts are for
+     */
+    public HistogramBuckets getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * @return Number of values recorded in each bucket
+     */
+    public long[] getCounts() {
+        return Arrays.copyOf(counts, counts.length);
+    }
+}
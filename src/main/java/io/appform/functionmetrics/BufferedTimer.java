@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A timer that collects samples in a set of striped buffers and writes them into the underlying reservoir in
+ * batches. A thread picks a stripe based on its id. If the stripe is busy, the sample is written directly instead of
+ * waiting, so recording never blocks. All reads drain the buffers first, so counts and snapshots are always complete.
+ * Stripes are not tied to threads, so memory use does not grow with the number of threads recording.
+ * Invocations that are not sampled are counted as described in {@link SampledTimer}.
+ */
+public class BufferedTimer extends SampledTimer {
+    private final Stripe[] stripes;
+    private final int mask;
+
+    public BufferedTimer(Reservoir reservoir, Clock clock, int bufferSize) {
+        super(reservoir, clock);
+        final int stripeCount = stripeCount();
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(bufferSize);
+        }
+        this.mask = stripeCount - 1;
+    }
+
+    @Override
+    public void update(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            return;
+        }
+        final long nanos = unit.toNanos(duration);
+        final Stripe stripe = stripes[(int) Thread.currentThread().getId() & mask];
+        if (!stripe.lock.tryLock()) {
+            super.update(nanos, TimeUnit.NANOSECONDS);
+            return;
+        }
+        try {
+            stripe.samples[stripe.size++] = nanos;
+            if (stripe.size == stripe.samples.length) {
+                drain(stripe);
+            }
+        }
+        finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public void update(Duration duration) {
+        update(duration.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Writes all buffered samples into the underlying reservoir.
+     */
+    public void flush() {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                drain(stripe);
+            }
+            finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public long getCount() {
+        flush();
+        return super.getCount();
+    }
+
+    @Override
+    public double getFifteenMinuteRate() {
+        flush();
+        return super.getFifteenMinuteRate();
+    }
+
+    @Override
+    public double getFiveMinuteRate() {
+        flush();
+        return super.getFiveMinuteRate();
+    }
+
+    @Override
+    public double getMeanRate() {
+        flush();
+        return super.getMeanRate();
+    }
+
+    @Override
+    public double getOneMinuteRate() {
+        flush();
+        return super.getOneMinuteRate();
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        flush();
+        return super.getSnapshot();
+    }
+
+    private void drain(Stripe stripe) {
+        for (int i = 0; i < stripe.size; i++) {
+            super.update(stripe.samples[i], TimeUnit.NANOSECONDS);
+        }
+        stripe.size = 0;
+    }
+
+    private static int stripeCount() {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        return Integer.highestOneBit(Math.max(1, processors - 1)) << 1;
+    }
+
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long[] samples;
+        // Guarded by lock
+        private int size;
+
+        private Stripe(int bufferSize) {
+            this.samples = new long[bufferSize];
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.Clock;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link Clock} that returns a cached tick, refreshed by a background daemon thread at a fixed resolution.
+ * Reading this clock is a single volatile read, which is cheaper than {@link System#nanoTime()} on some platforms.
+ * Calls that complete faster than the resolution will be recorded as taking 0 or 1 resolution unit, so use this only
+ * for very hot methods where the cost of reading the clock matters more than the precision of individual samples.
+ * Create it with {@link #start(long, TimeUnit)} and {@link #close()} it once it is no longer used.
+ */
+public final class CoarseClock extends Clock implements Closeable {
+    private final long resolutionNanos;
+    private final Thread updater;
+    private volatile long tick;
+    private volatile boolean running = true;
+
+    private CoarseClock(long resolutionNanos) {
+        this.resolutionNanos = resolutionNanos;
+        this.tick = System.nanoTime();
+        this.updater = new Thread(this::update, "function-metrics-coarse-clock");
+        this.updater.setDaemon(true);
+    }
+
+    /**
+     * Creates a clock and starts its background thread.
+     * @param resolution Interval at which the cached tick is refreshed
+     * @param unit Unit of the resolution
+     * @return Running clock
+     */
+    public static CoarseClock start(long resolution, TimeUnit unit) {
+        final long resolutionNanos = unit.toNanos(resolution);
+        if (resolutionNanos <= 0) {
+            throw new IllegalArgumentException("Clock resolution must be positive");
+        }
+        final CoarseClock clock = new CoarseClock(resolutionNanos);
+        clock.updater.start();
+        return clock;
+    }
+
+    @Override
+    public long getTick() {
+        return tick;
+    }
+
+    public long getResolutionNanos() {
+        return resolutionNanos;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(updater);
+    }
+
+    private void update() {
+        while (running) {
+            tick = System.nanoTime();
+            LockSupport.parkNanos(resolutionNanos);
+        }
+    }
+}
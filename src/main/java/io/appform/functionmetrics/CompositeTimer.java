@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.SlidingWindowReservoir;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformSnapshot;
+import com.codahale.metrics.WeightedSnapshot;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A {@link Timer} that merges two other timers when it is read. This is used for {@link TimerDomain#ALL}, so that
+ * every invocation updates only the timer for its outcome. Counts and rates are the sums of both parts. Snapshots are
+ * merged exactly when both parts keep bucket counts of the same layout or all values of a time window. Snapshots of
+ * sampling reservoirs are merged with each part weighted by its count.
+ * Updates made on this timer directly, for example by code that looks it up in the registry, are recorded into a
+ * third part that is created on the first such update and merged on read like the other two.
+ */
+public class CompositeTimer extends Timer {
+    private final Timer first;
+    private final Timer second;
+    private final Supplier<Reservoir> directReservoirFactory;
+    private final boolean weightByCount;
+    // Created on the first direct update
+    private volatile Timer direct;
+    private volatile Reservoir directReservoir;
+
+    /**
+     * @param weightByCount Set if the snapshots of the parts are samples rather than all recorded values
+     */
+    public CompositeTimer(Timer first, Timer second, boolean weightByCount) {
+        this(first, second, ExponentiallyDecayingReservoir::new, weightByCount);
+    }
+
+    /**
+     * @param directReservoirFactory Creates the reservoir of the part that records direct updates, ideally of the same
+     *                               kind as the reservoirs of the other parts so that snapshots merge exactly
+     * @param weightByCount          Set if the snapshots of the parts are samples rather than all recorded values
+     */
+    public CompositeTimer(Timer first,
+                          Timer second,
+                          Supplier<Reservoir> directReservoirFactory,
+                          boolean weightByCount) {
+        super(new Meter(), new Histogram(new SlidingWindowReservoir(1)), Clock.defaultClock());
+        this.first = first;
+        this.second = second;
+        this.directReservoirFactory = directReservoirFactory;
+        this.weightByCount = weightByCount;
+    }
+
+    @Override
+    public long getCount() {
+        final Timer directPart = direct;
+        return first.getCount() + second.getCount() + (directPart != null ? directPart.getCount() : 0);
+    }
+
+    @Override
+    public double getFifteenMinuteRate() {
+        return sum(Timer::getFifteenMinuteRate);
+    }
+
+    @Override
+    public double getFiveMinuteRate() {
+        return sum(Timer::getFiveMinuteRate);
+    }
+
+    @Override
+    public double getMeanRate() {
+        return sum(Timer::getMeanRate);
+    }
+
+    @Override
+    public double getOneMinuteRate() {
+        return sum(Timer::getOneMinuteRate);
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        final List<Timer> parts = parts();
+        final List<Snapshot> snapshots = new ArrayList<>(parts.size());
+        parts.forEach(part -> snapshots.add(part.getSnapshot()));
+        final Snapshot merged = mergeBuckets(snapshots);
+        if (merged != null) {
+            return merged;
+        }
+        if (!weightByCount) {
+            final long[] values = snapshots.stream()
+                    .flatMapToLong(snapshot -> Arrays.stream(snapshot.getValues()))
+                    .toArray();
+            return new UniformSnapshot(values);
+        }
+        final List<WeightedSnapshot.WeightedSample> samples = new ArrayList<>();
+        for (int i = 0; i < parts.size(); i++) {
+            addSamples(samples, snapshots.get(i), parts.get(i).getCount());
+        }
+        return new WeightedSnapshot(samples);
+    }
+
+    @Override
+    public void update(long duration, TimeUnit unit) {
+        direct().update(duration, unit);
+    }
+
+    @Override
+    public void update(Duration duration) {
+        direct().update(duration);
+    }
+
+    @Override
+    public <T> T time(Callable<T> event) throws Exception {
+        return direct().time(event);
+    }
+
+    @Override
+    public <T> T timeSupplier(Supplier<T> event) {
+        return direct().timeSupplier(event);
+    }
+
+    @Override
+    public void time(Runnable event) {
+        direct().time(event);
+    }
+
+    @Override
+    public Context time() {
+        return direct().time();
+    }
+
+    public Timer getFirst() {
+        return first;
+    }
+
+    public Timer getSecond() {
+        return second;
+    }
+
+    /**
+     * @return Bucket counts summing both parts and direct updates, or null if the parts do not share a bucket layout
+     */
+    BucketCounts bucketCounts(BucketCounts firstCounts, BucketCounts secondCounts) {
+        if (firstCounts == null
+                || secondCounts == null
+                || !sameLayout(firstCounts.getBuckets(), secondCounts.getBuckets())) {
+            return null;
+        }
+        return new BucketCounts() {
+            @Override
+            public HistogramBuckets getBuckets() {
+                return firstCounts.getBuckets();
+            }
+
+            @Override
+            public void addTotalCounts(long[] counts) {
+                firstCounts.addTotalCounts(counts);
+                secondCounts.addTotalCounts(counts);
+                final Reservoir directPart = directReservoir;
+                if (directPart instanceof BucketCounts
+                        && sameLayout(getBuckets(), ((BucketCounts) directPart).getBuckets())) {
+                    ((BucketCounts) directPart).addTotalCounts(counts);
+                }
+            }
+        };
+    }
+
+    private Timer direct() {
+        final Timer existing = direct;
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (this) {
+            if (direct == null) {
+                directReservoir = directReservoirFactory.get();
+                direct = new Timer(directReservoir);
+            }
+            return direct;
+        }
+    }
+
+    /**
+     * @return Parts to read, the direct part only once it has recorded something
+     */
+    private List<Timer> parts() {
+        final Timer directPart = direct;
+        return directPart != null && directPart.getCount() > 0
+               ? Arrays.asList(first, second, directPart)
+               : Arrays.asList(first, second);
+    }
+
+    private double sum(ToDoubleFunction<Timer> rate) {
+        final Timer directPart = direct;
+        return rate.applyAsDouble(first) + rate.applyAsDouble(second)
+                + (directPart != null ? rate.applyAsDouble(directPart) : 0);
+    }
+
+    private static boolean sameLayout(HistogramBuckets buckets, HistogramBuckets other) {
+        return buckets.getSignificantDigits() == other.getSignificantDigits()
+                && buckets.getHighestTrackableValue() == other.getHighestTrackableValue();
+    }
+
+    /**
+     * @return Sum of the bucket counts of the snapshots, or null if they do not all share a bucket layout
+     */
+    private static Snapshot mergeBuckets(List<Snapshot> snapshots) {
+        if (!(snapshots.get(0) instanceof BucketSnapshot)) {
+            return null;
+        }
+        final HistogramBuckets buckets = ((BucketSnapshot) snapshots.get(0)).getBuckets();
+        for (Snapshot snapshot : snapshots) {
+            if (!(snapshot instanceof BucketSnapshot)
+                    || !sameLayout(buckets, ((BucketSnapshot) snapshot).getBuckets())) {
+                return null;
+            }
+        }
+        final long[] counts = ((BucketSnapshot) snapshots.get(0)).getCounts();
+        for (int i = 1; i < snapshots.size(); i++) {
+            final long[] otherCounts = ((BucketSnapshot) snapshots.get(i)).getCounts();
+            for (int j = 0; j < counts.length; j++) {
+                counts[j] += otherCounts[j];
+            }
+        }
+        return new BucketSnapshot(buckets, counts);
+    }
+
+    private static void addSamples(List<WeightedSnapshot.WeightedSample> samples, Snapshot snapshot, long count) {
+        final long[] values = snapshot.getValues();
+        if (values.length == 0) {
+            return;
+        }
+        final double weight = (double) Math.max(count, values.length) / values.length;
+        for (long value : values) {
+            samples.add(new WeightedSnapshot.WeightedSample(value, weight));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Immutable view of the configuration of {@link FunctionMetricsManager}. A new snapshot is published every time the
+ * manager is initialized or reconfigured. Instrumented code reads the current snapshot once per invocation and uses it
+ * throughout, so an invocation never sees a mix of old and new settings.
+ */
+public final class ConfigSnapshot {
+    static final ConfigSnapshot UNINITIALIZED = new ConfigSnapshot(null, null, new Options());
+
+    private final MetricRegistry registry;
+    private final String prefix;
+    private final Options options;
+    private final boolean cacheDisabled;
+    private final TermDictionary termDictionary;
+
+    ConfigSnapshot(MetricRegistry registry, String prefix, Options options) {
+        this.registry = registry;
+        this.prefix = prefix;
+        this.options = options;
+        // Parameter capture relies on the per method cache
+        this.cacheDisabled = options.isDisableCacheOptimisation() && !options.isEnableParameterCapture();
+        this.termDictionary = new TermDictionary(options.getCaseFormatConverter());
+    }
+
+    public boolean isInitialized() {
+        return registry != null;
+    }
+
+    public MetricRegistry getRegistry() {
+        return registry;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public Options getOptions() {
+        return options;
+    }
+
+    public boolean isCacheDisabled() {
+        return cacheDisabled;
+    }
+
+    /**
+     * @return Terms of captured parameter values converted with the case format converter of this snapshot
+     */
+    TermDictionary getTermDictionary() {
+        return termDictionary;
+    }
+
+    public boolean isParameterCaptureEnabled() {
+        return options.isEnableParameterCapture();
+    }
+
+    /**
+     * @return true if timers created under this snapshot would be built differently under the other one
+     */
+    boolean hasDifferentTimerSettings(ConfigSnapshot other) {
+        final Options that = other.options;
+        return options.getMetricKind() != that.getMetricKind()
+                || !options.getCaseFormatConverter().equals(that.getCaseFormatConverter())
+                || options.isDerivedAllTimer() != that.isDerivedAllTimer()
+                || options.isDimensionalMetrics() != that.isDimensionalMetrics()
+                || options.isDimensionalOnly() != that.isDimensionalOnly()
+                || options.getTimerType() != that.getTimerType()
+                || options.getParameterReservoirType() != that.getParameterReservoirType()
+                || options.getSlidingWindowSeconds() != that.getSlidingWindowSeconds()
+                || options.getDecayingSize() != that.getDecayingSize()
+                || Double.compare(options.getDecayingAlpha(), that.getDecayingAlpha()) != 0
+                || options.getHistogramPrecision() != that.getHistogramPrecision()
+                || options.getHistogramIntervalSeconds() != that.getHistogramIntervalSeconds()
+                || options.getRecordingMode() != that.getRecordingMode()
+                || options.getRecordingBufferSize() != that.getRecordingBufferSize()
+                || options.getSamplingMode() != that.getSamplingMode();
+    }
+}
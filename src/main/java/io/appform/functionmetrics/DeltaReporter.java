@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Timer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A {@link ScheduledReporter} that exports what happened since the previous report instead of full snapshots. Counts
+ * of counters, histograms, meters and timers are exported as deltas. Timers created by {@link FunctionMetricsManager}
+ * with {@link TimerReservoirType#HDR_HISTOGRAM} or {@link TimerReservoirType#OFF_HEAP_HISTOGRAM} reservoirs also export
+ * deltas per bucket, read straight from the reservoir through {@link BucketCounts}. No snapshots are taken, so
+ * reporting does not copy or sort samples. Other timers only export count deltas. Numeric gauges are exported as is,
+ * except for NaN and infinite values, which are skipped.
+ * Each report is encoded with a {@link LineProtocolEncoder} and handed to the output as a single string. With tags
+ * enabled, the metrics in {@link FunctionMetricsManager#taggedMetrics()} are exported with their {@link MetricTags}
+ * instead of their names.
+ */
+public class DeltaReporter extends ScheduledReporter {
+    private final LineProtocolEncoder encoder;
+    private final Consumer<String> output;
+    private final Clock clock;
+    private final boolean tagged;
+    private final MetricFilter filter;
+    private final Map<String, State> states = new HashMap<>();
+    private long reportSequence;
+
+    private DeltaReporter(MetricRegistry registry,
+                          MetricFilter filter,
+                          LineProtocolEncoder encoder,
+                          Consumer<String> output,
+                          Clock clock,
+                          boolean tagged) {
+        super(registry, "function-metrics-delta-reporter", filter, TimeUnit.SECONDS, TimeUnit.NANOSECONDS);
+        this.encoder = encoder;
+        this.output = output;
+        this.clock = clock;
+        this.tagged = tagged;
+        this.filter = filter;
+    }
+
+    public static Builder forRegistry(MetricRegistry registry) {
+        return new Builder(registry);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public synchronized void report(SortedMap<String, Gauge> gauges,
+                                    SortedMap<String, Counter> counters,
+                                    SortedMap<String, Histogram> histograms,
+                                    SortedMap<String, Meter> meters,
+                                    SortedMap<String, Timer> timers) {
+        final long timestamp = clock.getTime();
+        final long sequence = ++reportSequence;
+        final StringBuilder out = new StringBuilder();
+        gauges.forEach((name, gauge) -> {
+            final Object value = gauge.getValue();
+            if (value instanceof Number) {
+                encoder.appendValue(out, name, (Number) value, timestamp);
+            }
+        });
+        counters.forEach((name, counter) -> appendCount(out, name, counter.getCount(), sequence, timestamp));
+        histograms.forEach((name, histogram) -> appendCount(out, name, histogram.getCount(), sequence, timestamp));
+        final TaggedMetrics taggedMetrics = tagged ? FunctionMetricsManager.taggedMetrics() : null;
+        meters.forEach((name, meter) -> {
+            if (taggedMetrics == null || !taggedMetrics.contains(name)) {
+                appendCount(out, name, meter.getCount(), sequence, timestamp);
+            }
+        });
+        timers.forEach((name, timer) -> {
+            if (taggedMetrics == null || !taggedMetrics.contains(name)) {
+                appendTimer(out, name, null, timer, sequence, timestamp);
+            }
+        });
+        if (taggedMetrics != null) {
+            taggedMetrics.forEach((tags, metric) -> {
+                if (!filter.matches(tags.getName(), metric)) {
+                    return;
+                }
+                if (metric instanceof Timer) {
+                    appendTimer(out, tags.getName(), tags, (Timer) metric, sequence, timestamp);
+                }
+                else {
+                    final State state = state(tags.getName(), sequence);
+                    encoder.appendDelta(out, tags, state.countDelta(metric.getCount()), null, null, timestamp);
+                }
+            });
+        }
+        // Drop state of metrics that are gone
+        final Iterator<State> iterator = states.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().sequence != sequence) {
+                iterator.remove();
+            }
+        }
+        if (out.length() > 0) {
+            output.accept(out.toString());
+        }
+    }
+
+    private void appendCount(StringBuilder out, String name, long count, long sequence, long timestamp) {
+        final State state = state(name, sequence);
+        encoder.appendDelta(out, name, state.countDelta(count), null, null, timestamp);
+    }
+
+    /**
+     * @param tags Tags to export the timer with, null to export it by name
+     */
+    private void appendTimer(StringBuilder out,
+                             String name,
+                             MetricTags tags,
+                             Timer timer,
+                             long sequence,
+                             long timestamp) {
+        final State state = state(name, sequence);
+        final long countDelta = state.countDelta(timer.getCount());
+        final BucketCounts counts = FunctionMetricsManager.bucketCounts(name);
+        final HistogramBuckets buckets = counts != null ? counts.getBuckets() : null;
+        final long[] bucketDeltas = counts != null ? state.bucketDeltas(counts) : null;
+        if (tags != null) {
+            encoder.appendDelta(out, tags, countDelta, buckets, bucketDeltas, timestamp);
+        }
+        else {
+            encoder.appendDelta(out, name, countDelta, buckets, bucketDeltas, timestamp);
+        }
+    }
+
+    private State state(String name, long sequence) {
+        final State state = states.computeIfAbsent(name, key -> new State());
+        state.sequence = sequence;
+        return state;
+    }
+
+    private static final class State {
+        private long sequence;
+        private long lastCount;
+        private BucketCounts source;
+        private long[] lastTotals;
+        private long[] totals;
+
+        private long countDelta(long count) {
+            // A lower count means the metric was replaced
+            final long delta = count >= lastCount ? count - lastCount : count;
+            lastCount = count;
+            return delta;
+        }
+
+        /**
+         * @return Values recorded per bucket since the last call. The array is reused by the next call.
+         */
+        private long[] bucketDeltas(BucketCounts counts) {
+            if (source != counts) {
+                source = counts;
+                lastTotals = new long[counts.getBuckets().size()];
+                totals = new long[lastTotals.length];
+            }
+            Arrays.fill(totals, 0L);
+            counts.addTotalCounts(totals);
+            final long[] previous = lastTotals;
+            for (int i = 0; i < previous.length; i++) {
+                final long total = totals[i];
+                previous[i] = total - previous[i];
+                totals[i] = total;
+            }
+            lastTotals = totals;
+            totals = previous;
+            return previous;
+        }
+    }
+
+    public static class Builder {
+        private final MetricRegistry registry;
+        private MetricFilter filter = MetricFilter.ALL;
+        private LineProtocolEncoder encoder = new LineProtocolEncoder();
+        private Consumer<String> output;
+        private Clock clock = Clock.defaultClock();
+        private boolean tagged;
+
+        private Builder(MetricRegistry registry) {
+            this.registry = registry;
+        }
+
+        public Builder filter(MetricFilter filter) {
+            this.filter = filter;
+            return this;
+        }
+
+        public Builder encoder(LineProtocolEncoder encoder) {
+            this.encoder = encoder;
+            return this;
+        }
+
+        /**
+         * Receives the encoded lines of each report. Required, there is no default output.
+         */
+        public Builder output(Consumer<String> output) {
+            this.output = output;
+            return this;
+        }
+
+        /**
+         * Clock used for timestamps of exported lines.
+         */
+        public Builder clock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Export the metrics in {@link FunctionMetricsManager#taggedMetrics()} with their tags. Their registry names,
+         * if any, are skipped. This is the only way to export metrics kept with {@link Options#isDimensionalOnly()}.
+         */
+        public Builder tagged(boolean tagged) {
+            this.tagged = tagged;
+            return this;
+        }
+
+        /**
+         * @throws IllegalStateException if no output has been set
+         */
+        public DeltaReporter build() {
+            if (output == null) {
+                throw new IllegalStateException("An output is required to build a delta reporter");
+            }
+            return new DeltaReporter(registry, filter, encoder, output, clock, tagged);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.Metered;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Failure timers of a single method broken down by exception type. Exception classes are mapped to a metric term
+ * once, when first thrown, and the resulting timer handle is cached by class. The term is the simple class name, or
+ * the fully qualified name if another class with the same simple name was mapped first. A throw of a known class therefore
+ * costs a map lookup. At most {@link Options#getMaxExceptionTypes()} classes are tracked per method. Classes thrown
+ * after that, and classes not covered by {@link Options#getExceptionTypes()}, are recorded under
+ * {@link Options#getExceptionOverflowTerm()}.
+ */
+class ExceptionTimers {
+    private final MethodData methodData;
+    private final Options options;
+    private final Map<Class<?>, Handle> byClass = new ConcurrentHashMap<>();
+    private final Map<String, Handle> byTerm = new ConcurrentHashMap<>();
+    private final Map<String, Class<?>> termOwners = new ConcurrentHashMap<>();
+    private final Handle overflow;
+
+    ExceptionTimers(MethodData methodData, Options options) {
+        this.methodData = methodData;
+        this.options = options;
+        this.overflow = new Handle(options.getExceptionOverflowTerm());
+    }
+
+    /**
+     * @return Metric to record a failure with the given exception in, or null if the manager is not initialized
+     */
+    Metered get(final Throwable error) {
+        final Class<?> errorClass = error.getClass();
+        Handle handle = byClass.get(errorClass);
+        if (handle == null) {
+            handle = byClass.size() < options.getMaxExceptionTypes()
+                     ? byClass.computeIfAbsent(errorClass, this::createHandle)
+                     : overflow;
+        }
+        return handle.get();
+    }
+
+    private Handle createHandle(Class<?> errorClass) {
+        final Class<?> matched = match(errorClass);
+        return matched == null
+               ? overflow
+               : byTerm.computeIfAbsent(term(matched), Handle::new);
+    }
+
+    /**
+     * @return Simple name of the class, or its fully qualified name if the simple name is used by another class
+     */
+    private String term(Class<?> errorClass) {
+        final String simpleTerm = simpleTerm(errorClass);
+        final Class<?> owner = termOwners.putIfAbsent(simpleTerm, errorClass);
+        return owner == null || owner == errorClass
+               ? simpleTerm
+               : errorClass.getName().replace('$', '_');
+    }
+
+    /**
+     * @return The class itself if no types are configured, otherwise the nearest configured super type, or null
+     */
+    private Class<?> match(Class<?> errorClass) {
+        final List<Class<? extends Throwable>> exceptionTypes = options.getExceptionTypes();
+        if (exceptionTypes.isEmpty()) {
+            return errorClass;
+        }
+        for (Class<?> type = errorClass; type != null; type = type.getSuperclass()) {
+            if (exceptionTypes.contains(type)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    private static String simpleTerm(Class<?> errorClass) {
+        final String simpleName = errorClass.getSimpleName();
+        return simpleName.isEmpty()
+               ? errorClass.getName().substring(errorClass.getName().lastIndexOf('.') + 1).replace('$', '_')
+               : simpleName;
+    }
+
+    private final class Handle {
+        private final String term;
+        private volatile StampedTimer timer;
+
+        private Handle(String term) {
+            this.term = term;
+        }
+
+        private Metered get() {
+            StampedTimer current = timer;
+            if (current == null || !current.stamp.isCurrent()) {
+                final MetricStamp stamp = FunctionMetricsManager.exceptionStamp(methodData, term);
+                final Metered resolved = FunctionMetricsManager.exceptionMetric(methodData, term);
+                if (resolved == null) {
+                    return null;
+                }
+                current = new StampedTimer(resolved, stamp);
+                timer = current;
+            }
+            return current.timer;
+        }
+    }
+
+    private static final class StampedTimer {
+        private final Metered timer;
+        private final MetricStamp stamp;
+
+        private StampedTimer(Metered timer, MetricStamp stamp) {
+            this.timer = timer;
+            this.stamp = stamp;
+        }
+    }
+}
@@ -23,4 +23,26 @@ public class FunctionMetricConstants {
     public static final Pattern VALID_PARAM_VALUE_PATTERN = Pattern.compile("^[a-zA-Z_][a-zA-Z-_0-9]*$");
 
     private FunctionMetricConstants() {}
+
+    /**
+     * Same check as {@link #VALID_PARAM_VALUE_PATTERN}, without a matcher: the value starts with an ASCII letter or
+     * underscore, followed by ASCII letters, digits, underscores or hyphens.
+     */
+    public static boolean isValidParamValue(final CharSequence value) {
+        final int length = value.length();
+        if (length == 0 || !isLetterOrUnderscore(value.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < length; i++) {
+            final char c = value.charAt(i);
+            if (!isLetterOrUnderscore(c) && !(c >= '0' && c <= '9') && c != '-') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLetterOrUnderscore(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
 }
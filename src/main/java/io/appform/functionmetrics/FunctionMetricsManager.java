@@ -16,90 +16,840 @@
 
 package io.appform.functionmetrics;
 
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.LockFreeExponentiallyDecayingReservoir;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metered;
+import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Reservoir;
 import com.codahale.metrics.SlidingTimeWindowArrayReservoir;
 import com.codahale.metrics.Timer;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
-import java.util.ArrayList;
-import java.util.List;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * Global metrics manager that needs to be initialized at start
  */
 public class FunctionMetricsManager {
     private static final Logger log = LoggerFactory.getLogger(FunctionMetricsManager.class.getName());
-    private static final AtomicBoolean initialized = new AtomicBoolean(false);
-    private static Options options = new Options();
-    private static MetricRegistry registry;
-    private static String prefix;
+    // Bumped on initialization and reconfiguration only. Removals invalidate the tokens of the removed names instead
+    private static final AtomicInteger generation = new AtomicInteger(0);
+    private static final Map<String, MetricStamp.Token> removalTokens = new ConcurrentHashMap<>();
+    private static final Set<String> metricNames = ConcurrentHashMap.newKeySet();
+    // Timers created through timers() before any function recorded into them
+    private static final Set<String> placeholderTimers = ConcurrentHashMap.newKeySet();
+    private static final Map<String, BufferedTimer> bufferedTimers = new ConcurrentHashMap<>();
+    private static final Map<String, BucketCounts> bucketCounts = new ConcurrentHashMap<>();
+    // Never dropped, so that invocations always leave the gauge they entered even if it gets re-registered
+    private static final Map<String, InFlightGauge> inFlightGauges = new ConcurrentHashMap<>();
+    // Keyed by function rather than by method data, as method data is not cached if the cache optimisation is off
+    private static final Map<String, SlowCallBuffer> slowCallBuffers = new ConcurrentHashMap<>();
+    private static final TaggedMetrics taggedMetrics = new TaggedMetrics();
+    // Enum types of the metric terms of all functions seen, converted up front by the term dictionary of every snapshot
+    private static final Set<Class<?>> enumTermTypes = ConcurrentHashMap.newKeySet();
+    private static final int MAX_CACHED_NAMES = 100_000;
+    private static final int BASE_NAME = TimerDomain.values().length;
+    private static final NameDictionary nameDictionary = new NameDictionary(MAX_CACHED_NAMES);
+    private static final Map<NameKey, String[]> metricNameCache = new ConcurrentHashMap<>();
+    private static volatile ConfigSnapshot config = ConfigSnapshot.UNINITIALIZED;
+    // Guarded by FunctionMetricsManager.class
+    private static ScheduledExecutorService flusher;
+    private static ScheduledFuture<?> flushTask;
 
     private FunctionMetricsManager() {}
 
     public static void initialize(final String packageName, final MetricRegistry registry) {
-        initialize(packageName, registry, options);
+        initialize(packageName, registry, new Options());
     }
 
     public static void initialize(final String packageName,
                                   final MetricRegistry registry,
                                   final Options options) {
-        if (initialized.get()) {
+        if (config.isInitialized()) {
             log.warn("Function metrics already initialized");
             return;
         }
         synchronized (FunctionMetricsManager.class) {
-            if (initialized.get()) {
+            if (config.isInitialized()) {
                 return;
             }
             log.info("Function Metrics prefix: {}", packageName);
-            FunctionMetricsManager.registry = registry;
-            FunctionMetricsManager.prefix = packageName;
-            FunctionMetricsManager.options = options;
-            if (options.isEnableParameterCapture() && options.isDisableCacheOptimisation()) {
-                log.warn("Enabling caching for method annotations because enableParameterCapture flag is set to true");
-                options.setDisableCacheOptimisation(false);
+            warnOnCacheSettings(options);
+            registry.addListener(new MetricRegistryListener.Base() {
+                @Override
+                public void onTimerAdded(String name, Timer timer) {
+                    if (timer instanceof BufferedTimer) {
+                        bufferedTimers.put(name, (BufferedTimer) timer);
+                    }
+                }
+
+                @Override
+                public void onTimerRemoved(String name) {
+                    metricNames.remove(name);
+                    placeholderTimers.remove(name);
+                    taggedMetrics.remove(name);
+                    bufferedTimers.remove(name);
+                    bucketCounts.remove(name);
+                    invalidate(name);
+                }
+
+                @Override
+                public void onMeterRemoved(String name) {
+                    metricNames.remove(name);
+                    taggedMetrics.remove(name);
+                    invalidate(name);
+                }
+
+                @Override
+                public void onGaugeRemoved(String name) {
+                    metricNames.remove(name);
+                    invalidate(name);
+                }
+            });
+            config = new ConfigSnapshot(registry, packageName, options);
+            config.getTermDictionary().convertEnums(enumTermTypes);
+            updateFlusher(options);
+            PinningMonitor.update(options);
+            IdleTimerEvictor.update(options);
+        }
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Replaces the options of an initialized manager at runtime. Invocations already in progress complete with the
+     * options they started with. Cached timer handles are re-resolved on their next use. If the new options change
+     * how metrics are built (metric kind, reservoir, recording, sampling or case format settings), metrics created by
+     * this manager are removed from the registry and get created afresh with the new settings, which resets their
+     * counts.
+     * @param options New options
+     */
+    public static void reconfigure(final Options options) {
+        synchronized (FunctionMetricsManager.class) {
+            final ConfigSnapshot current = config;
+            if (!current.isInitialized()) {
+                log.warn("Please call FunctionMetricsManager.initialize() before reconfiguring. Options ignored.");
+                return;
+            }
+            warnOnCacheSettings(options);
+            final ConfigSnapshot updated = new ConfigSnapshot(current.getRegistry(), current.getPrefix(), options);
+            config = updated;
+            updated.getTermDictionary().convertEnums(enumTermTypes);
+            if (current.hasDifferentTimerSettings(updated)) {
+                log.info("Timer settings changed, recreating function metrics");
+                metricNames.forEach(current.getRegistry()::remove);
+                taggedMetrics.forEach((tags, metric) -> bufferedTimers.remove(tags.getName()));
+                taggedMetrics.clear();
+                placeholderTimers.clear();
             }
+            if (current.getOptions().getSlowCallCapacity() != options.getSlowCallCapacity()
+                    || current.getOptions().getSlowCallWindowMillis() != options.getSlowCallWindowMillis()) {
+                slowCallBuffers.clear();
+            }
+            updateFlusher(options);
+            PinningMonitor.update(options);
+            IdleTimerEvictor.update(options);
         }
-        initialized.set(true);
+        generation.incrementAndGet();
     }
 
+    /**
+     * Timers of a function, creating them if they do not exist yet. Metrics of the domain that are meters, because
+     * the function uses {@link MetricKind#METER} or {@link MetricKind#HYBRID}, are left out. A timer created here
+     * before the function was first called is replaced if the function turns out to record a meter under its name.
+     * Use {@link #metrics(TimerDomain, FunctionInvocation)} to read the metrics of a function of any kind.
+     * @return Timer of the un-parameterized metric followed by the one of the parameterized metric, if a parameter
+     * string is given and parameter capture is enabled
+     */
     public static ImmutableList<Timer> timers(final TimerDomain domain, final FunctionInvocation invocation) {
-        if(!initialized.get()) {
+        final ConfigSnapshot current = config;
+        if(!current.isInitialized()) {
             log.warn("Please call FunctionMetricsManager.initialize() to setup metrics collection. No metrics will be pushed.");
             return ImmutableList.<Timer>builder().build();
         }
-        final String metricName = prefix + "." + invocation.getClassName() + "." + invocation.getMethodName() + "." + domain.getValue();
-        final String parameterizedMetricName = options.isEnableParameterCapture() && !Strings.isNullOrEmpty(invocation.getParameterString())
-                                               ? prefix + "." + invocation.getClassName() + "." + invocation.getMethodName() + "." + invocation.getParameterString() + "." + domain.getValue()
-                                               : null;
-        if (Strings.isNullOrEmpty(parameterizedMetricName)) {
-            return ImmutableList.of(getTimer(metricName));
-        } else {
-            return ImmutableList.of(getTimer(metricName), getTimer(parameterizedMetricName));
-        }
-    }
-
-    private static Timer getTimer(String metricName) {
-        return registry.timer(metricName, () -> {
-            switch (options.getTimerType()) {
-                case DECAYING:
-                    return new Timer(LockFreeExponentiallyDecayingReservoir.builder().build());
-                case SLIDING:
-                default:
-                    // The correct behaviour is to throw an IllegalStateException here. However, it is not advisable to
-                    // fail actual method calls, so it is better to use the default timer type
-                    return new Timer(new SlidingTimeWindowArrayReservoir(60, TimeUnit.SECONDS));
+        final Options options = current.getOptions();
+        final ImmutableList.Builder<Timer> timers = ImmutableList.builder();
+        addTimer(timers, current, invocation, null, domain, ReservoirConfig.DEFAULT.getTimerReservoirType(options));
+        if (current.isParameterCaptureEnabled() && !Strings.isNullOrEmpty(invocation.getParameterString())) {
+            addTimer(timers, current, invocation, invocation.getParameterString(), domain,
+                     ReservoirConfig.DEFAULT.getParameterReservoirType(options));
+        }
+        return timers.build();
+    }
+
+    /**
+     * Metrics of a function as they have been recorded, timers or meters depending on its {@link MetricKind}.
+     * Unlike {@link #timers(TimerDomain, FunctionInvocation)}, this does not create any metrics.
+     * @return Metric of the un-parameterized metric followed by the one of the parameterized metric, if a parameter
+     * string is given and parameter capture is enabled. Metrics that do not exist are left out.
+     */
+    public static ImmutableList<Metered> metrics(final TimerDomain domain, final FunctionInvocation invocation) {
+        final ConfigSnapshot current = config;
+        if(!current.isInitialized()) {
+            return ImmutableList.of();
+        }
+        final ImmutableList.Builder<Metered> metrics = ImmutableList.builder();
+        final Metered metric = existingMetric(current, invocation, null, domain);
+        if (metric != null) {
+            metrics.add(metric);
+        }
+        if (current.isParameterCaptureEnabled() && !Strings.isNullOrEmpty(invocation.getParameterString())) {
+            final Metered parameterMetric = existingMetric(current, invocation, invocation.getParameterString(),
+                                                           domain);
+            if (parameterMetric != null) {
+                metrics.add(parameterMetric);
             }
-        });
+        }
+        return metrics.build();
+    }
+
+    private static void addTimer(final ImmutableList.Builder<Timer> timers,
+                                 final ConfigSnapshot config,
+                                 final FunctionInvocation invocation,
+                                 final String parameterString,
+                                 final TimerDomain domain,
+                                 final TimerReservoirType reservoirType) {
+        final Metered existing = existingMetric(config, invocation, parameterString, domain);
+        if (existing instanceof Timer) {
+            timers.add((Timer) existing);
+            return;
+        }
+        if (existing != null) {
+            return;
+        }
+        final String metricName = metricName(config, invocation.getClassName(), invocation.getMethodName(),
+                                             parameterString, domain);
+        placeholderTimers.add(metricName);
+        final MetricTags tags = metricTags(config, invocation.getClassName(), invocation.getMethodName(),
+                                           parameterString, domain);
+        try {
+            timers.add(getTimer(config, metricName, tags, ReservoirConfig.DEFAULT, SamplingConfig.DEFAULT,
+                                reservoirType));
+        }
+        catch (IllegalArgumentException e) {
+            // The function created a meter under this name in the meantime
+            placeholderTimers.remove(metricName);
+        }
+    }
+
+    private static Metered existingMetric(final ConfigSnapshot config,
+                                          final FunctionInvocation invocation,
+                                          final String parameterString,
+                                          final TimerDomain domain) {
+        final String metricName = metricName(config, invocation.getClassName(), invocation.getMethodName(),
+                                             parameterString, domain);
+        return existingMetric(config, metricName, metricTags(config, invocation.getClassName(),
+                                                             invocation.getMethodName(), parameterString, domain));
+    }
+
+    /**
+     * @return Metered metric registered under the name, or kept in the tagged index only, null if there is none
+     */
+    private static Metered existingMetric(final ConfigSnapshot config, final String metricName, final MetricTags tags) {
+        if (tags != null && config.getOptions().isDimensionalOnly()) {
+            return taggedMetrics.get(tags);
+        }
+        final Metric metric = config.getRegistry().getMetrics().get(metricName);
+        return metric instanceof Metered ? (Metered) metric : null;
+    }
+
+    /**
+     * Resolves timers for all domains of a function in one go. Callers are expected to hold on to the returned
+     * handles instead of calling this on every invocation.
+     * @param methodData Method the timers are for. Its settings are used to create timers that do not exist yet
+     * @param parameterString Captured parameter string, null or empty for the un-parameterized metric
+     * @return Timer handles, or null if the manager has not been initialized
+     */
+    public static MethodTimers methodTimers(final MethodData methodData, final String parameterString) {
+        // Read generation before the configuration, so that handles resolved during a concurrent reconfiguration
+        // are stale and not current
+        final int currentGeneration = generation.get();
+        final ConfigSnapshot current = config;
+        if(!current.isInitialized()) {
+            log.warn("Please call FunctionMetricsManager.initialize() to setup metrics collection. No metrics will be pushed.");
+            return null;
+        }
+        final String className = methodData.getClassName();
+        final String methodName = methodData.getMethodName();
+        final Options options = current.getOptions();
+        final boolean parameterInFlight = options.isInFlightTracking() && !Strings.isNullOrEmpty(parameterString);
+        final String[] names = metricNames(current, className, methodName, parameterString);
+        final String successName = names[TimerDomain.SUCCESS.ordinal()];
+        final String failureName = names[TimerDomain.FAILURE.ordinal()];
+        final String allName = names[TimerDomain.ALL.ordinal()];
+        final String baseName = names[BASE_NAME];
+        // Tokens are taken before the metrics are resolved, so that handles resolved during a concurrent removal of
+        // one of their metrics are stale and not current
+        final MetricStamp stamp = parameterInFlight
+                                  ? stamp(currentGeneration, successName, failureName, allName,
+                                          baseName + ".inFlight", baseName + ".maxInFlight")
+                                  : stamp(currentGeneration, successName, failureName, allName);
+        final MetricKind metricKind = methodData.getMetricKind(options);
+        final TimerReservoirType reservoirType = Strings.isNullOrEmpty(parameterString)
+                                                 ? methodData.getReservoirConfig().getTimerReservoirType(options)
+                                                 : methodData.getReservoirConfig().getParameterReservoirType(options);
+        final Metered success = getMetric(current, successName,
+                                          metricTags(current, className, methodName, parameterString,
+                                                     TimerDomain.SUCCESS),
+                                          methodData, metricKind.isTimed(TimerDomain.SUCCESS), reservoirType);
+        final Metered failure = getMetric(current, failureName,
+                                          metricTags(current, className, methodName, parameterString,
+                                                     TimerDomain.FAILURE),
+                                          methodData, metricKind.isTimed(TimerDomain.FAILURE), reservoirType);
+        final MetricTags allTags = metricTags(current, className, methodName, parameterString, TimerDomain.ALL);
+        final Metered all = metricKind == MetricKind.TIMER
+                                    && options.isDerivedAllTimer()
+                                    && success instanceof Timer
+                                    && failure instanceof Timer
+                            ? getCompositeTimer(current, allName, allTags, (Timer) success, (Timer) failure,
+                                                () -> createReservoir(options, methodData.getReservoirConfig(),
+                                                                      reservoirType),
+                                                reservoirType == TimerReservoirType.DECAYING,
+                                                bucketCounts.get(successName),
+                                                bucketCounts.get(failureName))
+                            : getMetric(current, allName, allTags, methodData,
+                                        metricKind.isTimed(TimerDomain.ALL), reservoirType);
+        final InFlightGauge inFlight = parameterInFlight
+                                       ? inFlightGauge(current, methodData, parameterString)
+                                       : null;
+        return new MethodTimers(success, failure, all, inFlight,
+                                Strings.isNullOrEmpty(parameterString) ? null : parameterString, stamp);
+    }
+
+    /**
+     * Resolves the failure metric of a function for a single exception type. This is a timer, unless the
+     * {@link MetricKind} of the function does not time failures.
+     * @param methodData Method the metric is for
+     * @param exceptionTerm Metric term for the exception type
+     * @return Metric, or null if the manager has not been initialized
+     */
+    public static Metered exceptionMetric(final MethodData methodData, final String exceptionTerm) {
+        final ConfigSnapshot current = config;
+        if(!current.isInitialized()) {
+            return null;
+        }
+        final String metricName = exceptionMetricName(current, methodData, exceptionTerm);
+        final Options options = current.getOptions();
+        return getMetric(current, metricName, null, methodData,
+                         methodData.getMetricKind(options).isTimed(TimerDomain.FAILURE),
+                         methodData.getReservoirConfig().getTimerReservoirType(options));
+    }
+
+    /**
+     * @return Stamp of the failure metric of a function for a single exception type, see
+     * {@link #exceptionMetric(MethodData, String)}
+     */
+    static MetricStamp exceptionStamp(final MethodData methodData, final String exceptionTerm) {
+        final int currentGeneration = generation.get();
+        return stamp(currentGeneration, exceptionMetricName(config, methodData, exceptionTerm));
+    }
+
+    private static String exceptionMetricName(final ConfigSnapshot config,
+                                              final MethodData methodData,
+                                              final String exceptionTerm) {
+        return metricName(config, methodData.getClassName(), methodData.getMethodName(), null, TimerDomain.FAILURE)
+                + "." + exceptionTerm;
+    }
+
+    /**
+     * Removes the metrics of a captured parameter value from the registry.
+     */
+    static void removeParameterMetrics(final ConfigSnapshot config,
+                                       final MethodData methodData,
+                                       final String parameterString) {
+        for (TimerDomain domain : TimerDomain.values()) {
+            final String metricName = metricName(config, methodData.getClassName(), methodData.getMethodName(),
+                                                 parameterString, domain);
+            removeMetric(config, metricName);
+        }
+        final String name = baseName(config, methodData.getClassName(), methodData.getMethodName(), parameterString);
+        config.getRegistry().remove(name + ".inFlight");
+        config.getRegistry().remove(name + ".maxInFlight");
+    }
+
+    /**
+     * Resolves the in-flight gauge of a function, registering it together with its high watermark gauge as
+     * {@code <name>.inFlight} and {@code <name>.maxInFlight}. The gauge of the un-parameterized metric is the same
+     * instance for the lifetime of the application, and gets registered again if it has been removed.
+     * @param parameterString Captured parameter string, null or empty for the un-parameterized metric
+     * @return Gauge, or null if the names are taken by other metrics
+     */
+    static InFlightGauge inFlightGauge(final ConfigSnapshot config,
+                                       final MethodData methodData,
+                                       final String parameterString) {
+        final String name = baseName(config, methodData.getClassName(), methodData.getMethodName(), parameterString);
+        final InFlightGauge gauge = Strings.isNullOrEmpty(parameterString)
+                                    ? inFlightGauges.computeIfAbsent(name, key -> new InFlightGauge())
+                                    : new InFlightGauge();
+        final Object registered = registerGauge(config, name + ".inFlight", gauge);
+        if (!(registered instanceof InFlightGauge)) {
+            log.warn("Metric {}.inFlight is taken by another metric, not tracking in-flight invocations", name);
+            return Strings.isNullOrEmpty(parameterString) ? gauge : null;
+        }
+        final InFlightGauge resolved = (InFlightGauge) registered;
+        registerGauge(config, name + ".maxInFlight", resolved.getMaxGauge());
+        return Strings.isNullOrEmpty(parameterString) ? gauge : resolved;
+    }
+
+    private static void removeMetric(final ConfigSnapshot config, final String metricName) {
+        config.getRegistry().remove(metricName);
+        if (taggedMetrics.remove(metricName)) {
+            // Only kept in the index, so the registry listener does not see the removal
+            metricNames.remove(metricName);
+            bucketCounts.remove(metricName);
+            bufferedTimers.remove(metricName);
+            placeholderTimers.remove(metricName);
+            invalidate(metricName);
+        }
+    }
+
+    private static Object registerGauge(final ConfigSnapshot config, final String name, final Gauge<?> gauge) {
+        try {
+            return config.getRegistry().gauge(name, () -> {
+                metricNames.add(name);
+                return gauge;
+            });
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return Buffered timer with the given name that is flushed in the background, or null if there is none
+     */
+    static BufferedTimer bufferedTimer(final String metricName) {
+        return bufferedTimers.get(metricName);
+    }
+
+    /**
+     * @return Bucket counts of the timer with the given name, or null if it does not count values in buckets
+     */
+    static BucketCounts bucketCounts(final String metricName) {
+        return bucketCounts.get(metricName);
+    }
+
+    /**
+     * @return Index of the success, failure and all metrics of functions, keyed by tags. Empty unless
+     * {@link Options#isDimensionalMetrics()} is set.
+     */
+    public static TaggedMetrics taggedMetrics() {
+        return taggedMetrics;
+    }
+
+    /**
+     * @return Slow calls of all functions currently kept, slowest first. See
+     * {@link Options.OptionsBuilder#slowCallThreshold(long, TimeUnit)}.
+     */
+    public static List<SlowCall> slowCalls() {
+        final long now = System.currentTimeMillis();
+        final List<SlowCall> calls = new ArrayList<>();
+        slowCallBuffers.values().forEach(buffer -> calls.addAll(buffer.snapshot(now)));
+        calls.sort(Comparator.comparingLong(SlowCall::getDurationNanos).reversed());
+        return calls;
+    }
+
+    /**
+     * @return Slow calls of a single function currently kept, slowest first
+     */
+    public static List<SlowCall> slowCalls(final String className, final String methodName) {
+        final SlowCallBuffer buffer = slowCallBuffers.get(functionName(className, methodName));
+        return buffer != null ? buffer.snapshot(System.currentTimeMillis()) : Collections.emptyList();
+    }
+
+    /**
+     * @return Buffer keeping the slow calls of a function, created with the given configuration if it does not exist
+     */
+    static SlowCallBuffer slowCallBuffer(final ConfigSnapshot config, final MethodData methodData) {
+        final Options options = config.getOptions();
+        return slowCallBuffers.computeIfAbsent(
+                functionName(methodData.getClassName(), methodData.getMethodName()),
+                key -> new SlowCallBuffer(options.getSlowCallCapacity(), options.getSlowCallWindowMillis()));
+    }
+
+    private static String functionName(final String className, final String methodName) {
+        return className + "." + methodName;
+    }
+
+    public static boolean isInitialized() {
+        return config.isInitialized();
+    }
+
+    /**
+     * @return Current configuration. Read this once and use it for the whole invocation.
+     */
+    public static ConfigSnapshot config() {
+        return config;
+    }
+
+    static int generation() {
+        return generation.get();
+    }
+
+    /**
+     * @return Stamp of a handle that uses the metrics with the given names. Take it before resolving the metrics.
+     */
+    static MetricStamp stamp(final int generation, final String... names) {
+        final MetricStamp.Token[] tokens = new MetricStamp.Token[names.length];
+        for (int i = 0; i < names.length; i++) {
+            tokens[i] = removalTokens.computeIfAbsent(names[i], name -> new MetricStamp.Token());
+        }
+        return new MetricStamp(generation, tokens);
+    }
+
+    /**
+     * @return Stamp of the in-flight gauges of a function, see {@link #inFlightGauge(ConfigSnapshot, MethodData,
+     * String)}
+     */
+    static MetricStamp inFlightStamp(final ConfigSnapshot config,
+                                     final MethodData methodData,
+                                     final String parameterString) {
+        final String name = baseName(config, methodData.getClassName(), methodData.getMethodName(), parameterString);
+        return stamp(generation.get(), name + ".inFlight", name + ".maxInFlight");
+    }
+
+    /**
+     * Marks handles using the metric with the given name as stale. Handles using other metrics stay current.
+     */
+    private static void invalidate(final String name) {
+        final MetricStamp.Token token = removalTokens.remove(name);
+        if (token != null) {
+            token.remove();
+        }
+    }
+
+    private static String metricName(final ConfigSnapshot config,
+                                     final String className,
+                                     final String methodName,
+                                     final String parameterString,
+                                     final TimerDomain domain) {
+        return metricNames(config, className, methodName, parameterString)[domain.ordinal()];
+    }
+
+    /**
+     * @return Tags of a metric, or null if metrics are not dimensional
+     */
+    private static MetricTags metricTags(final ConfigSnapshot config,
+                                         final String className,
+                                         final String methodName,
+                                         final String parameterString,
+                                         final TimerDomain domain) {
+        if (!config.getOptions().isDimensionalMetrics()) {
+            return null;
+        }
+        return new MetricTags(config.getPrefix(), className, methodName, domain,
+                              Strings.emptyToNull(parameterString),
+                              metricName(config, className, methodName, parameterString, domain), -1);
+    }
+
+    private static String baseName(final ConfigSnapshot config,
+                                   final String className,
+                                   final String methodName,
+                                   final String parameterString) {
+        return metricNames(config, className, methodName, parameterString)[BASE_NAME];
+    }
+
+    /**
+     * Names of the metrics of a function are built once and cached by the ids of their components. Names of
+     * parameterized metrics are not cached here, parameter values are unbounded and would stay interned after their
+     * metrics are evicted; they are built once per {@link MethodTimers} instead.
+     * @return Metric names indexed by {@link TimerDomain} ordinal, followed by the base name
+     */
+    private static String[] metricNames(final ConfigSnapshot config,
+                                        final String className,
+                                        final String methodName,
+                                        final String parameterString) {
+        if (!Strings.isNullOrEmpty(parameterString)) {
+            return buildMetricNames(config.getPrefix(), className, methodName, parameterString);
+        }
+        final NameKey key = nameKey(config.getPrefix(), className, methodName);
+        if (key == null) {
+            return buildMetricNames(config.getPrefix(), className, methodName, parameterString);
+        }
+        final String[] names = metricNameCache.get(key);
+        if (names != null) {
+            return names;
+        }
+        final String[] built = buildMetricNames(config.getPrefix(), className, methodName, null);
+        if (metricNameCache.size() >= MAX_CACHED_NAMES) {
+            return built;
+        }
+        final String[] existing = metricNameCache.putIfAbsent(key, built);
+        return existing != null ? existing : built;
+    }
+
+    /**
+     * @return Key made of the ids of the name components, or null if the dictionary is full
+     */
+    private static NameKey nameKey(final String prefix, final String className, final String methodName) {
+        final int prefixId = nameDictionary.id(prefix);
+        final int classId = nameDictionary.id(className);
+        final int methodId = nameDictionary.id(methodName);
+        if (prefixId == NameDictionary.NO_ID
+                || classId == NameDictionary.NO_ID
+                || methodId == NameDictionary.NO_ID) {
+            return null;
+        }
+        return new NameKey(prefixId, classId, methodId);
+    }
+
+    private static String[] buildMetricNames(final String prefix,
+                                             final String className,
+                                             final String methodName,
+                                             final String parameterString) {
+        final String baseName = Strings.isNullOrEmpty(parameterString)
+                                ? prefix + "." + className + "." + methodName
+                                : prefix + "." + className + "." + methodName + "." + parameterString;
+        final TimerDomain[] domains = TimerDomain.values();
+        final String[] names = new String[domains.length + 1];
+        for (TimerDomain domain : domains) {
+            names[domain.ordinal()] = baseName + "." + domain.getValue();
+        }
+        names[BASE_NAME] = baseName;
+        return names;
+    }
+
+    private static Metered getMetric(ConfigSnapshot config,
+                                     String metricName,
+                                     MetricTags tags,
+                                     MethodData methodData,
+                                     boolean timed,
+                                     TimerReservoirType reservoirType) {
+        if (timed) {
+            return getTimer(config, metricName, tags, methodData.getReservoirConfig(), methodData.getSamplingConfig(),
+                            reservoirType);
+        }
+        final MetricRegistry.MetricSupplier<Metered> factory = () -> {
+            metricNames.add(metricName);
+            return new Meter();
+        };
+        try {
+            return store(config, tags, Metered.class,
+                         () -> config.getRegistry().meter(metricName, () -> (Meter) factory.newMetric()), factory);
+        }
+        catch (IllegalArgumentException e) {
+            if (placeholderTimers.remove(metricName)) {
+                // Created through timers() before the function was called
+                removeMetric(config, metricName);
+                return getMetric(config, metricName, tags, methodData, false, reservoirType);
+            }
+            log.warn("Metric {} is not a meter, recording into the existing metric", metricName);
+            return existingMetric(config, metricName, tags);
+        }
+    }
+
+    private static Timer getCompositeTimer(ConfigSnapshot config,
+                                           String metricName,
+                                           MetricTags tags,
+                                           Timer success,
+                                           Timer failure,
+                                           Supplier<Reservoir> directReservoirFactory,
+                                           boolean sampledReservoir,
+                                           BucketCounts successCounts,
+                                           BucketCounts failureCounts) {
+        final MetricRegistry.MetricSupplier<Timer> factory = () -> {
+            metricNames.add(metricName);
+            final CompositeTimer composite = new CompositeTimer(success, failure, directReservoirFactory,
+                                                                sampledReservoir);
+            final BucketCounts counts = composite.bucketCounts(successCounts, failureCounts);
+            if (counts != null) {
+                bucketCounts.put(metricName, counts);
+            }
+            return composite;
+        };
+        final Timer resolved = store(config, tags, Timer.class,
+                                     () -> config.getRegistry().timer(metricName, factory), factory);
+        if (resolved instanceof CompositeTimer
+                && (((CompositeTimer) resolved).getFirst() != success
+                || ((CompositeTimer) resolved).getSecond() != failure)) {
+            // One of the parts has been removed and created afresh, the composite still reads the old one
+            removeMetric(config, metricName);
+            return store(config, tags, Timer.class, () -> config.getRegistry().timer(metricName, factory), factory);
+        }
+        return resolved;
+    }
+
+    private static Timer getTimer(ConfigSnapshot config,
+                                  String metricName,
+                                  MetricTags tags,
+                                  ReservoirConfig reservoirConfig,
+                                  SamplingConfig samplingConfig,
+                                  TimerReservoirType reservoirType) {
+        final MetricRegistry.MetricSupplier<Timer> factory = () -> {
+            final Options options = config.getOptions();
+            final Reservoir reservoir = createReservoir(options, reservoirConfig, reservoirType);
+            metricNames.add(metricName);
+            if (reservoir instanceof BucketCounts) {
+                bucketCounts.put(metricName, (BucketCounts) reservoir);
+            }
+            if (options.getRecordingMode() == RecordingMode.BUFFERED) {
+                return new BufferedTimer(reservoir, Clock.defaultClock(), options.getRecordingBufferSize());
+            }
+            return samplingConfig.getSamplingMode(options) != SamplingMode.NONE
+                   ? new SampledTimer(reservoir, Clock.defaultClock())
+                   : new Timer(reservoir);
+        };
+        return store(config, tags, Timer.class, () -> config.getRegistry().timer(metricName, factory), factory);
+    }
+
+    /**
+     * Resolves a metric from the registry, or from the tagged index only if {@link Options#isDimensionalOnly()} is
+     * set. Metrics with tags are added to the index either way.
+     * @param tags Tags of the metric, null if it is not dimensional
+     * @param registered Resolves the metric from the registry, creating it if needed
+     * @param factory Creates the metric if it is kept in the index only
+     */
+    private static <T extends Metered> T store(ConfigSnapshot config,
+                                               MetricTags tags,
+                                               Class<T> type,
+                                               Supplier<? extends T> registered,
+                                               MetricRegistry.MetricSupplier<? extends T> factory) {
+        if (tags == null) {
+            return registered.get();
+        }
+        if (config.getOptions().isDimensionalOnly()) {
+            final Metered metric = taggedMetrics.computeIfAbsent(tags, () -> {
+                final T created = factory.newMetric();
+                // Not in the registry, so the registry listener does not pick it up for flushing
+                if (created instanceof BufferedTimer) {
+                    bufferedTimers.put(tags.getName(), (BufferedTimer) created);
+                }
+                return created;
+            });
+            if (!type.isInstance(metric)) {
+                throw new IllegalArgumentException(tags.getName() + " is already used for a different type of metric");
+            }
+            return type.cast(metric);
+        }
+        final T metric = registered.get();
+        taggedMetrics.put(tags, metric);
+        return metric;
+    }
+
+    private static Reservoir createReservoir(Options options,
+                                             ReservoirConfig reservoirConfig,
+                                             TimerReservoirType reservoirType) {
+        if (reservoirType == TimerReservoirType.SLIDING
+                && options.getRecordingMode() == RecordingMode.VIRTUAL_THREADS) {
+            return new HdrHistogramReservoir(reservoirConfig.getHistogramPrecision(options),
+                                             reservoirConfig.getSlidingWindowSeconds(options), TimeUnit.SECONDS);
+        }
+        switch (reservoirType) {
+            case DECAYING:
+                return LockFreeExponentiallyDecayingReservoir.builder()
+                        .size(reservoirConfig.getDecayingSize(options))
+                        .alpha(reservoirConfig.getDecayingAlpha(options))
+                        .build();
+            case HDR_HISTOGRAM:
+                return new HdrHistogramReservoir(reservoirConfig.getHistogramPrecision(options),
+                                                 options.getHistogramIntervalSeconds(), TimeUnit.SECONDS);
+            case OFF_HEAP_HISTOGRAM:
+                return new OffHeapHistogramReservoir(reservoirConfig.getHistogramPrecision(options),
+                                                     options.getHistogramIntervalSeconds(), TimeUnit.SECONDS);
+            case SLIDING:
+            default:
+                // The correct behaviour is to throw an IllegalStateException here. However, it is not advisable to
+                // fail actual method calls, so it is better to use the default timer type
+                return new SlidingTimeWindowArrayReservoir(reservoirConfig.getSlidingWindowSeconds(options),
+                                                           TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Converts the constants of the given enum types to metric terms with the current configuration, and remembers
+     * the types so that the term dictionaries of later configurations convert them up front as well. Types are added
+     * before the configuration is read, and configurations are published before the types are read, so a type
+     * registered during a reconfiguration is converted by at least one of the two.
+     */
+    static void registerEnumTerms(final List<Class<?>> types) {
+        if (types.isEmpty()) {
+            return;
+        }
+        enumTermTypes.addAll(types);
+        final ConfigSnapshot current = config;
+        if (current.isInitialized()) {
+            current.getTermDictionary().convertEnums(types);
+        }
+    }
+
+    private static void warnOnCacheSettings(Options options) {
+        if (options.isEnableParameterCapture() && options.isDisableCacheOptimisation()) {
+            log.warn("Enabling caching for method annotations because enableParameterCapture flag is set to true");
+        }
+    }
+
+    // Called with the class lock held
+    private static void updateFlusher(Options options) {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        if (options.getRecordingMode() != RecordingMode.BUFFERED) {
+            return;
+        }
+        if (flusher == null) {
+            flusher = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder()
+                            .setDaemon(true)
+                            .setNameFormat("function-metrics-flusher")
+                            .build());
+        }
+        final long intervalMillis = options.getRecordingFlushIntervalMillis();
+        flushTask = flusher.scheduleWithFixedDelay(() -> bufferedTimers.values().forEach(BufferedTimer::flush),
+                                                   intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
     }
 
     public static Options getOptions() {
-        return options;
+        return config.getOptions();
+    }
+
+    private static final class NameKey {
+        private final int prefixId;
+        private final int classId;
+        private final int methodId;
+
+        private NameKey(int prefixId, int classId, int methodId) {
+            this.prefixId = prefixId;
+            this.classId = classId;
+            this.methodId = methodId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof NameKey)) {
+                return false;
+            }
+            final NameKey other = (NameKey) o;
+            return prefixId == other.prefixId
+                    && classId == other.classId
+                    && methodId == other.methodId;
+        }
+
+        @Override
+        public int hashCode() {
+            return (prefixId * 31 + classId) * 31 + methodId;
+        }
     }
 }
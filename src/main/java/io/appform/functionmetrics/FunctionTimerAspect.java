@@ -16,24 +16,18 @@
 
 package io.appform.functionmetrics;
 
-import static io.appform.functionmetrics.FunctionMetricConstants.METRIC_DELIMITER;
-import static io.appform.functionmetrics.FunctionMetricConstants.VALID_PARAM_VALUE_PATTERN;
-import static io.appform.functionmetrics.FunctionMetricsManager.timers;
-
-import com.codahale.metrics.Timer;
-import com.google.common.base.Joiner;
-import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
+import java.lang.reflect.Parameter;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Flow;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.Signature;
 import org.aspectj.lang.annotation.Around;
@@ -51,7 +45,9 @@ import org.slf4j.LoggerFactory;
 public class FunctionTimerAspect {
     private static final Logger log = LoggerFactory.getLogger(FunctionTimerAspect.class.getName());
 
-    private final Map<String, MethodData> paramCache = new ConcurrentHashMap<>();
+    // Keyed by the static part of the join point, which AspectJ creates once per advised method. It does not override
+    // equals or hashCode, so lookups are identity based and do not allocate
+    private final Map<JoinPoint.StaticPart, MethodData> paramCache = new ConcurrentHashMap<>();
 
     @Pointcut("@annotation(io.appform.functionmetrics.MonitoredFunction)")
     public void monitoredFunctionCalled() {
@@ -65,45 +61,56 @@ public class FunctionTimerAspect {
 
     @Around("monitoredFunctionCalled() && anyFunctionCalled()")
     public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+        final ConfigSnapshot config = InvocationRecorder.config();
         final Signature callSignature = joinPoint.getSignature();
-        final MethodData methodData = getMethodData(joinPoint, callSignature);
-        final FunctionInvocation invocation = createFunctionInvocation(methodData, joinPoint, callSignature);
+        final MethodData methodData = getMethodData(config, joinPoint, callSignature);
+        final MethodTimers parameterTimers = methodData.getParameterPositions().isEmpty()
+                                             ? null
+                                             : InvocationRecorder.parameterTimers(config, methodData, joinPoint.getArgs());
 
-        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final long start = InvocationRecorder.start(config, methodData);
         try {
             final Object response = joinPoint.proceed();
-            stopwatch.stop();
-            List<Timer> timers = timers(TimerDomain.SUCCESS, invocation);
-            timers.forEach(timer -> updateTimer(timer, stopwatch));
-            return response;
+            return returnsPublisher(callSignature)
+                   ? InvocationRecorder.successPublisher(config, methodData, parameterTimers, start,
+                                                         (Flow.Publisher<?>) response)
+                   : InvocationRecorder.success(config, methodData, parameterTimers, start, response);
         }
         catch (Throwable t) {
-            stopwatch.stop();
-            List<Timer> timers = timers(TimerDomain.FAILURE, invocation);
-            timers.forEach(timer -> updateTimer(timer, stopwatch));
+            InvocationRecorder.failure(config, methodData, parameterTimers, start, t);
             throw t;
         }
-        finally {
-            List<Timer> timers = timers(TimerDomain.ALL, invocation);
-            timers.forEach(timer -> updateTimer(timer, stopwatch));
-        }
-    }
-
-    private boolean cacheDisabled() {
-        return FunctionMetricsManager.getOptions().isDisableCacheOptimisation();
     }
 
-    private boolean parameterCaptureEnabled() {
-        return FunctionMetricsManager.getOptions().isEnableParameterCapture();
+    /**
+     * A publisher can only be replaced by a wrapper if the function is declared to return exactly
+     * {@link Flow.Publisher}.
+     */
+    private static boolean returnsPublisher(final Signature callSignature) {
+        return ((MethodSignature) callSignature).getReturnType() == Flow.Publisher.class;
     }
 
-    private MethodData getMethodData(final ProceedingJoinPoint joinPoint, final Signature callSignature) {
-        return cacheDisabled()
-                ? createMethodData(joinPoint, callSignature)
-                : paramCache.computeIfAbsent(callSignature.toLongString(), key -> createMethodData(joinPoint, callSignature));
+    private MethodData getMethodData(final ConfigSnapshot config,
+                                     final ProceedingJoinPoint joinPoint,
+                                     final Signature callSignature) {
+        if (config.isCacheDisabled()) {
+            return createMethodData(joinPoint, callSignature, false);
+        }
+        // computeIfAbsent may lock a bin even when the key is present, so look up first
+        final JoinPoint.StaticPart key = joinPoint.getStaticPart();
+        final MethodData methodData = paramCache.get(key);
+        return methodData != null
+               ? methodData
+               : paramCache.computeIfAbsent(key, k -> createMethodData(joinPoint, callSignature, true));
     }
 
-    private MethodData createMethodData(final ProceedingJoinPoint joinPoint, final Signature callSignature) {
+    /**
+     * Cached method data always carries the metric term positions, so that parameter capture can be switched on by
+     * reconfiguring the manager without invalidating the cache.
+     */
+    private MethodData createMethodData(final ProceedingJoinPoint joinPoint,
+                                        final Signature callSignature,
+                                        final boolean withParameterPositions) {
         final MethodSignature methodSignature = (MethodSignature) callSignature;
         final MonitoredFunction monitoredFunction = methodSignature.getMethod().getAnnotation(MonitoredFunction.class);
         final String className = Strings.isNullOrEmpty(monitoredFunction.className())
@@ -112,25 +119,16 @@ public class FunctionTimerAspect {
         final String methodName = Strings.isNullOrEmpty(monitoredFunction.method())
                                   ? callSignature.getName()
                                   : monitoredFunction.method();
-        final boolean isParameterCaptureEnabled = parameterCaptureEnabled();
-        return new MethodData(className, methodName, isParameterCaptureEnabled
-                ? getAnnotatedParamPositions(methodSignature)
-                : Collections.emptyList());
-    }
-
-    private FunctionInvocation createFunctionInvocation(
-            final MethodData methodData,
-            final ProceedingJoinPoint joinPoint,
-            final Signature callSignature) {
-        final MethodSignature methodSignature = (MethodSignature) callSignature;
-        final Options options = FunctionMetricsManager.getOptions();
-        final String className = methodData.getClassName();
-        final String methodName = methodData.getMethodName();
-        final String parameterString = !methodData.getParameterPositions().isEmpty()
-                ? getParamString(joinPoint, methodData.getParameterPositions()).orElse("")
-                : "";
-        log.trace("Called for class: {} method: {} parameterString: {}", className, methodName, parameterString);
-        return new FunctionInvocation(className, methodName, parameterString);
+        final List<Integer> paramPositions = withParameterPositions
+                                             ? getAnnotatedParamPositions(methodSignature)
+                                             : Collections.emptyList();
+        final MethodData methodData = new MethodData(className, methodName, paramPositions,
+                ReservoirConfig.of(monitoredFunction), SamplingConfig.of(monitoredFunction),
+                MetricKind.of(monitoredFunction), getTermExtractors(methodSignature, paramPositions),
+                getEnumTermTypes(methodSignature, paramPositions));
+        // Registration keeps the first method data per method, so this is a lookup if the cache is disabled
+        PinningMonitor.register(callSignature.getDeclaringTypeName(), callSignature.getName(), methodData);
+        return methodData;
     }
 
     private boolean isParamCaptureRequired(final MethodSignature methodSignature) {
@@ -139,18 +137,46 @@ public class FunctionTimerAspect {
                         .getParameters()[i].getAnnotation(MetricTerm.class) != null);
     }
 
-    private String getParamValueAtPos(final ProceedingJoinPoint joinPoint,
-                                      final int pos) {
-        if (pos >= joinPoint.getArgs().length) {
-            log.warn("Unusual scenario: parameter position {} is >= args length {}", pos, joinPoint.getArgs().length);
-            return "";
+    /**
+     * @return Extractors for the metric terms at the given positions, empty if none of them has one
+     */
+    private List<TermExtractor<?>> getTermExtractors(final MethodSignature methodSignature,
+                                                     final List<Integer> paramPositions) {
+        final List<TermExtractor<?>> extractors = paramPositions.stream()
+                .map(pos -> methodSignature.getMethod().getParameters()[pos].getAnnotation(MetricTerm.class))
+                .map(MetricTerm::extractor)
+                .map(FunctionTimerAspect::createTermExtractor)
+                .collect(Collectors.toList());
+        return extractors.stream().allMatch(Objects::isNull) ? Collections.emptyList() : extractors;
+    }
+
+    /**
+     * @return Distinct enum types of the metric terms at the given positions that use the parameter value as is
+     */
+    private List<Class<?>> getEnumTermTypes(final MethodSignature methodSignature,
+                                            final List<Integer> paramPositions) {
+        final Parameter[] parameters = methodSignature.getMethod().getParameters();
+        return paramPositions.stream()
+                .map(pos -> parameters[pos])
+                .filter(parameter -> parameter.getType().isEnum())
+                .filter(parameter -> parameter.getAnnotation(MetricTerm.class).extractor() == TermExtractor.None.class)
+                .<Class<?>>map(Parameter::getType)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static TermExtractor<?> createTermExtractor(final Class<? extends TermExtractor> type) {
+        if (type == TermExtractor.None.class) {
+            return null;
+        }
+        try {
+            return type.getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException e) {
+            log.warn("Could not create term extractor {}, recording without parameters", type.getName(), e);
+            return value -> null;
         }
-        final String paramValueStr = convertToString(joinPoint.getArgs()[pos]).trim();
-        return VALID_PARAM_VALUE_PATTERN.matcher(paramValueStr).matches()
-                ? FunctionMetricsManager.getOptions()
-                            .getCaseFormatConverter()
-                            .convert(paramValueStr)
-                : "";
     }
 
     private List<Integer> getAnnotatedParamPositions(final MethodSignature methodSignature) {
@@ -168,41 +194,4 @@ public class FunctionTimerAspect {
                 .map(Pair::getValue) // sort metric terms by order attribute
                 .collect(Collectors.toList());
     }
-
-    private Optional<String> getParamString(final ProceedingJoinPoint joinPoint,
-                                            final List<Integer> paramPositions) {
-        if (!parameterCaptureEnabled()) {
-            return Optional.empty();
-        }
-        List<String> paramValues = paramPositions
-                .stream()
-                .map(pos -> getParamValueAtPos(joinPoint, pos)) // extract parameter value
-                .collect(Collectors.toList());
-        // if and only if after all transformations none of the parameter values are null or
-        // empty will we add the parameter string to the metric name
-        if (paramValues
-                .stream()
-                .noneMatch(Strings::isNullOrEmpty)) {
-            return Optional.of(Joiner.on(METRIC_DELIMITER).join(paramValues));
-        }
-        return Optional.empty();
-    }
-
-    private void updateTimer(Timer timer, Stopwatch stopwatch) {
-        timer.update(stopwatch.elapsed(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
-    }
-
-    private String convertToString(Object obj) {
-        if (obj == null) {
-            return "";
-        }
-        else if (obj instanceof String) {
-            return (String) obj;
-        }
-        else if (obj instanceof Enum) {
-            return ((Enum<?>) obj).name();
-        }
-        return "";
-    }
-
 }
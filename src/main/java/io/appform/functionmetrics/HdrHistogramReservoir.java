@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link Reservoir} that counts values in a fixed set of {@link HistogramBuckets}, so that memory use does not
+ * depend on the rate at which values are recorded. Recording is a single atomic increment.
+ * Counts are kept per interval. When a snapshot is taken after the interval has elapsed, the current interval is
+ * closed and a new one started. Snapshots cover the last closed interval and the current one, so they always reflect
+ * between one and two intervals worth of values. If more than one interval has passed since the last rotation, both
+ * are closed, so that snapshots never include values older than two intervals.
+ */
+public class HdrHistogramReservoir implements Reservoir, BucketCounts {
+    /**
+     * Durations are recorded by timers in nanoseconds, anything above an hour is recorded as an hour.
+     */
+    public static final long DEFAULT_HIGHEST_TRACKABLE_VALUE = TimeUnit.HOURS.toNanos(1);
+
+    private final HistogramBuckets buckets;
+    private final long intervalNanos;
+    private final Clock clock;
+    private final AtomicReference<Intervals> intervals;
+    // Guarded by this. Counts of closed intervals, only kept once totals have been asked for
+    private long[] retired;
+
+    public HdrHistogramReservoir(int significantDigits, long interval, TimeUnit unit) {
+        this(new HistogramBuckets(significantDigits, DEFAULT_HIGHEST_TRACKABLE_VALUE), interval, unit,
+             Clock.defaultClock());
+    }
+
+    public HdrHistogramReservoir(HistogramBuckets buckets, long interval, TimeUnit unit, Clock clock) {
+        this.buckets = buckets;
+        this.intervalNanos = unit.toNanos(interval);
+        this.clock = clock;
+        this.intervals = new AtomicReference<>(new Intervals(new AtomicLongArray(buckets.size()),
+                                                             new AtomicLongArray(buckets.size()),
+                                                             clock.getTick(),
+                                                             null));
+    }
+
+    @Override
+    public int size() {
+        return getSnapshot().size();
+    }
+
+    @Override
+    public void update(long value) {
+        intervals.get().current.getAndIncrement(buckets.index(value));
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        final Intervals snapshotIntervals = rotateIfDue();
+        final long[] counts = new long[buckets.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = snapshotIntervals.previous.get(i) + snapshotIntervals.current.get(i);
+        }
+        return new BucketSnapshot(buckets, counts);
+    }
+
+    @Override
+    public HistogramBuckets getBuckets() {
+        return buckets;
+    }
+
+    @Override
+    public synchronized void addTotalCounts(long[] counts) {
+        if (retired == null) {
+            retired = new long[buckets.size()];
+        }
+        final Intervals current = intervals.get();
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += retired[i] + current.previous.get(i) + current.current.get(i)
+                    + (current.stale == null ? 0 : current.stale.get(i));
+        }
+    }
+
+    private Intervals rotateIfDue() {
+        final Intervals existing = intervals.get();
+        final long now = clock.getTick();
+        if (now - existing.startTick < intervalNanos) {
+            return existing;
+        }
+        synchronized (this) {
+            if (intervals.get() != existing) {
+                return intervals.get();
+            }
+            retire(existing.previous);
+            retire(existing.stale);
+            final Intervals rotated = now - existing.startTick < 2 * intervalNanos
+                    // Writers that picked up the old current interval will land in previous, which is still part of
+                    // snapshots
+                    ? new Intervals(existing.current, new AtomicLongArray(buckets.size()), now, null)
+                    // The current interval is older than a full interval as well. It is left out of snapshots, but
+                    // only retired with the next rotation, so that writers that picked it up still count in totals
+                    : new Intervals(new AtomicLongArray(buckets.size()), new AtomicLongArray(buckets.size()), now,
+                                    existing.current);
+            intervals.set(rotated);
+            return rotated;
+        }
+    }
+
+    // Guarded by this
+    private void retire(AtomicLongArray interval) {
+        if (retired == null || interval == null) {
+            return;
+        }
+        for (int i = 0; i < retired.length; i++) {
+            retired[i] += interval.get(i);
+        }
+    }
+
+    private static final class Intervals {
+        private final AtomicLongArray previous;
+        private final AtomicLongArray current;
+        private final long startTick;
+        // Closed interval that is not part of snapshots any more, but has not been retired yet. Null if there is none
+        private final AtomicLongArray stale;
+
+        private Intervals(AtomicLongArray previous, AtomicLongArray current, long startTick, AtomicLongArray stale) {
+            this.previous = previous;
+            this.current = current;
+            this.startTick = startTick;
+            this.stale = stale;
+        }
+    }
+}
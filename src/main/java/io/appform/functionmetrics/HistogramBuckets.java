@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.appform.functionmetrics;
+
+/**
+ * Log-linear bucket layout used by {@link HdrHistogramReservoir}, following the scheme used by HdrHistogram.
+ * Values are grouped into buckets covering powers of two, each split into linear sub-buckets. This keeps the relative
+ * error of every recorded value within the configured number of significant decimal digits, while the number of
+ * buckets grows only with the logarithm of the largest trackable value.
+ * Values below zero are recorded as zero, values above the highest trackable value as the highest trackable value.
+ */
+public final class HistogramBuckets {
+    public static final int MIN_SIGNIFICANT_DIGITS = 1;
+    public static final int MAX_SIGNIFICANT_DIGITS = 5;
+
+    private final int significantDigits;
+    private final long highestTrackableValue;
+    private final int subBucketHalfCountMagnitude;
+    private final int subBucketHalfCount;
+    private final long subBucketMask;
+    private final int leadingZeroCountBase;
+    private final int size;
+
+    public HistogramBuckets(int significantDigits, long highestTrackableValue) {
+        if (significantDigits < MIN_SIGNIFICANT_DIGITS || significantDigits > MAX_SIGNIFICANT_DIGITS) {
+            throw new IllegalArgumentException("Significant digits must be between " + MIN_SIGNIFICANT_DIGITS
+                                                       + " and " + MAX_SIGNIFICANT_DIGITS);
+        }
+        if (highestTrackableValue < 2) {
+            throw new IllegalArgumentException("Highest trackable value must be at least 2");
+        }
+        this.significantDigits = significantDigits;
+        this.highestTrackableValue = highestTrackableValue;
+        final long largestValueWithSingleUnitResolution = 2 * (long) Math.pow(10, significantDigits);
+        final int subBucketCountMagnitude
+                = (int) Math.ceil(Math.log(largestValueWithSingleUnitResolution) / Math.log(2));
+        this.subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+        final int subBucketCount = 1 << subBucketCountMagnitude;
+        this.subBucketHalfCount = subBucketCount / 2;
+        this.subBucketMask = subBucketCount - 1L;
+        this.leadingZeroCountBase = 64 - subBucketHalfCountMagnitude - 1;
+        int bucketCount = 1;
+        long smallestUntrackableValue = subBucketCount;
+        while (smallestUntrackableValue <= highestTrackableValue) {
+            if (smallestUntrackableValue > Long.MAX_VALUE / 2) {
+                bucketCount++;
+                break;
+            }
+            smallestUntrackableValue <<= 1;
+            bucketCount++;
+        }
+        this.size = (bucketCount + 1) * subBucketHalfCount;
+    }
+
+    public int getSignificantDigits() {
+        return significantDigits;
+    }
+
+    public long getHighestTrackableValue() {
+        return highestTrackableValue;
+    }
+
+    /**
+     * @return Number of buckets in this layout
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Index of the bucket the value falls in
+     */
+    public int index(long value) {
+        final long clamped = Math.max(0, Math.min(value, highestTrackableValue));
+        final int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(clamped | subBucketMask);
+        final int subBucketIndex = (int) (clamped >>> bucketIndex);
+        return ((bucketIndex + 1) << subBucketHalfCountMagnitude) + (subBucketIndex - subBucketHalfCount);
+    }
+
+    /**
+     * @return Smallest value that falls in the bucket at the given index
+     */
+    public long lowestValue(int index) {
+        int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+        int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+        if (bucketIndex < 0) {
+            subBucketIndex -= subBucketHalfCount;
+            bucketIndex = 0;
+        }
+        return ((long) subBucketIndex) << bucketIndex;
+    }
+
+    /**
+     * @return Largest value that falls in the bucket at the given index
+     */
+    public long highestValue(int index) {
+        final int bucketIndex = Math.max(0, (index >> subBucketHalfCountMagnitude) - 1);
+        return lowestValue(index) + (1L << bucketIndex) - 1;
+    }
+
+    /**
+     * @return Value used to represent all values in the bucket at the given index
+     */
+    public long medianValue(int index) {
+        final int bucketIndex = Math.max(0, (index >> subBucketHalfCountMagnitude) - 1);
+        return lowestValue(index) + ((1L << bucketIndex) >> 1);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes timers of captured parameter values that have not been used for
+ * {@link Options#getParameterIdleTimeoutMillis()}, together with their cached handles, so that values seen only once
+ * do not stay in the registry forever.
+ * Time is tracked in epochs. Every sweep starts a new epoch, and handles note the epoch they were last used in.
+ * A handle not used since before the previous sweep has been idle for at least one full timeout. Evictions are
+ * counted in {@code <prefix>.parameterTimers.evicted}.
+ */
+final class IdleTimerEvictor {
+    static final String EVICTED_COUNTER = "parameterTimers.evicted";
+
+    private static final Logger log = LoggerFactory.getLogger(IdleTimerEvictor.class.getName());
+    private static final Set<MethodData> parameterizedMethods = ConcurrentHashMap.newKeySet();
+    private static volatile int epoch;
+    // Guarded by IdleTimerEvictor.class
+    private static ScheduledExecutorService executor;
+    private static ScheduledFuture<?> sweepTask;
+
+    private IdleTimerEvictor() {}
+
+    /**
+     * @return Epoch to be noted by handles when they are used
+     */
+    static int epoch() {
+        return epoch;
+    }
+
+    /**
+     * Makes a method with parameterized timers known to the sweeps.
+     */
+    static void track(MethodData methodData) {
+        parameterizedMethods.add(methodData);
+    }
+
+    /**
+     * Starts or stops sweeping to match the options.
+     */
+    static synchronized void update(Options options) {
+        if (sweepTask != null) {
+            sweepTask.cancel(false);
+            sweepTask = null;
+        }
+        final long idleMillis = options.getParameterIdleTimeoutMillis();
+        if (idleMillis <= 0) {
+            return;
+        }
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder()
+                            .setDaemon(true)
+                            .setNameFormat("function-metrics-evictor")
+                            .build());
+        }
+        sweepTask = executor.scheduleWithFixedDelay(IdleTimerEvictor::sweepSafely,
+                                                    idleMillis, idleMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Evicts handles that have not been used since before the previous sweep, and starts a new epoch.
+     * @return Number of parameter values evicted
+     */
+    static synchronized int sweep() {
+        final ConfigSnapshot config = FunctionMetricsManager.config();
+        final int previous = epoch;
+        epoch = previous + 1;
+        if (!config.isInitialized()) {
+            return 0;
+        }
+        int evicted = 0;
+        for (MethodData methodData : parameterizedMethods) {
+            evicted += methodData.evictIdleParameterTimers(config, previous);
+        }
+        if (evicted > 0) {
+            config.getRegistry().counter(config.getPrefix() + "." + EVICTED_COUNTER).inc(evicted);
+            log.debug("Evicted timers for {} idle parameter values", evicted);
+        }
+        return evicted;
+    }
+
+    private static void sweepSafely() {
+        try {
+            sweep();
+        }
+        catch (Exception e) {
+            log.warn("Error evicting idle parameter timers", e);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.Gauge;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number of invocations of a function currently in flight, kept in a striped counter. Also tracks the highest number
+ * of concurrent invocations seen, exposed through {@link #getMaxGauge()}, which starts afresh from the current value
+ * every time it is read. With a single reporter this is the high watermark per reporting interval.
+ * The watermark is computed from the striped counter on entry, so it can miss short peaks under heavy contention.
+ */
+public class InFlightGauge implements Gauge<Long> {
+    private final LongAdder inFlight = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+    private final Gauge<Long> maxGauge = this::getAndResetMax;
+
+    public void enter() {
+        inFlight.increment();
+        final long current = inFlight.sum();
+        long seen = max.get();
+        while (current > seen && !max.compareAndSet(seen, current)) {
+            seen = max.get();
+        }
+    }
+
+    public void exit() {
+        inFlight.decrement();
+    }
+
+    @Override
+    public Long getValue() {
+        return Math.max(0, inFlight.sum());
+    }
+
+    /**
+     * @return Gauge reporting the highest number of concurrent invocations since it was last read
+     */
+    public Gauge<Long> getMaxGauge() {
+        return maxGauge;
+    }
+
+    private Long getAndResetMax() {
+        final long current = Math.max(0, inFlight.sum());
+        return Math.max(current, max.getAndSet(current));
+    }
+}
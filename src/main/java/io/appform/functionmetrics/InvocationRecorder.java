@@ -0,0 +1,395 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.appform.functionmetrics;
+
+import static io.appform.functionmetrics.FunctionMetricConstants.METRIC_DELIMITER;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metered;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records invocations of monitored functions. This is shared by {@link FunctionTimerAspect} and the code generated by
+ * {@link io.appform.functionmetrics.processor.MonitoredFunctionProcessor}, so that both instrumentation backends
+ * produce the same metrics for the same {@link Options}.
+ */
+public final class InvocationRecorder {
+    /**
+     * Returned by {@link #start(ConfigSnapshot, MethodData)} for invocations that are counted but not timed.
+     */
+    public static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    private static final Logger log = LoggerFactory.getLogger(InvocationRecorder.class.getName());
+
+    private InvocationRecorder() {}
+
+    /**
+     * @return Configuration to be passed to all other calls for the same invocation
+     */
+    public static ConfigSnapshot config() {
+        return FunctionMetricsManager.config();
+    }
+
+    /**
+     * Resolves the parameterized timers for an invocation.
+     * @param config Configuration of the invocation
+     * @param methodData Method being invoked
+     * @param args Arguments the method was invoked with
+     * @return Timers to be passed to {@link #success} or {@link #failure}, or null if there is nothing to record
+     */
+    public static MethodTimers parameterTimers(final ConfigSnapshot config,
+                                               final MethodData methodData,
+                                               final Object[] args) {
+        final List<Integer> paramPositions = methodData.getParameterPositions();
+        if (paramPositions.isEmpty() || !config.isParameterCaptureEnabled()) {
+            return null;
+        }
+        final Object terms = getMetricTerms(args, paramPositions, methodData.getTermExtractors());
+        if (terms == null) {
+            return null;
+        }
+        final MethodTimers parameterTimers = methodData.getParameterTimers(config, terms, key -> {
+            final String parameterString = getParamString(config, key).orElse("");
+            log.trace("Called for class: {} method: {} parameterString: {}",
+                      methodData.getClassName(), methodData.getMethodName(), parameterString);
+            return parameterString;
+        });
+        if (parameterTimers != null && parameterTimers.getInFlight() != null) {
+            parameterTimers.getInFlight().enter();
+        }
+        return parameterTimers;
+    }
+
+    /**
+     * Consults the sampler of the method and reads the clock for invocations that are to be timed. Functions using
+     * {@link MetricKind#METER} are never timed. Must be followed by exactly one call to {@link #success} or
+     * {@link #failure} with the same configuration, so that in-flight invocations are tracked correctly.
+     * @param config Configuration of the invocation
+     * @param methodData Method being invoked
+     * @return Current tick of the configured clock, or {@link #NOT_SAMPLED} if the invocation should only be counted
+     */
+    public static long start(final ConfigSnapshot config, final MethodData methodData) {
+        if (config.getOptions().isInFlightTracking()) {
+            final InFlightGauge inFlight = methodData.getInFlight(config);
+            if (inFlight != null) {
+                inFlight.enter();
+            }
+        }
+        if (methodData.getMetricKind(config.getOptions()) == MetricKind.METER) {
+            final MethodTimers methodTimers = methodData.getTimers();
+            if (methodTimers != null && methodTimers.isSampleable()) {
+                return NOT_SAMPLED;
+            }
+        }
+        final Sampler sampler = methodData.getSampler(config);
+        if (sampler != Sampler.ALWAYS && !sampler.sample()) {
+            final MethodTimers methodTimers = methodData.getTimers();
+            if (methodTimers != null && methodTimers.isSampleable()) {
+                return NOT_SAMPLED;
+            }
+        }
+        return config.getOptions().getClock().getTick();
+    }
+
+    public static void success(final ConfigSnapshot config,
+                               final MethodData methodData,
+                               final MethodTimers parameterTimers,
+                               final long start) {
+        record(TimerDomain.SUCCESS, null, config, methodData, parameterTimers, start);
+    }
+
+    /**
+     * Records a successful return of a function that returned a value. If
+     * {@link Options#isAsyncCompletionTiming()} is set and the value is a {@link CompletionStage}, recording is
+     * deferred until the stage completes, and the outcome is taken from the stage.
+     * @return The response, unchanged
+     */
+    public static <T> T success(final ConfigSnapshot config,
+                                final MethodData methodData,
+                                final MethodTimers parameterTimers,
+                                final long start,
+                                final T response) {
+        if (response instanceof CompletionStage && config.getOptions().isAsyncCompletionTiming()) {
+            recordOnCompletion(config, methodData, parameterTimers, start, (CompletionStage<?>) response);
+        }
+        else {
+            record(TimerDomain.SUCCESS, null, config, methodData, parameterTimers, start);
+        }
+        return response;
+    }
+
+    /**
+     * Records a successful return of a function declared to return a {@link Flow.Publisher}. If
+     * {@link Options#isAsyncCompletionTiming()} is set, the publisher is wrapped so that the invocation is recorded
+     * when the first subscription completes, fails or is cancelled. If the publisher is garbage collected before that,
+     * for example because nothing subscribed to it, the invocation is counted as a success without a duration.
+     * @return The response, or a publisher wrapping it
+     */
+    public static <T> Flow.Publisher<T> successPublisher(final ConfigSnapshot config,
+                                                         final MethodData methodData,
+                                                         final MethodTimers parameterTimers,
+                                                         final long start,
+                                                         final Flow.Publisher<T> response) {
+        if (response != null && config.getOptions().isAsyncCompletionTiming()) {
+            return new TimedPublisher<>(response, new AsyncCompletion(config, methodData, parameterTimers, start));
+        }
+        record(TimerDomain.SUCCESS, null, config, methodData, parameterTimers, start);
+        return response;
+    }
+
+    public static void failure(final ConfigSnapshot config,
+                               final MethodData methodData,
+                               final MethodTimers parameterTimers,
+                               final long start,
+                               final Throwable error) {
+        record(TimerDomain.FAILURE, error, config, methodData, parameterTimers, start);
+    }
+
+    private static void recordOnCompletion(final ConfigSnapshot config,
+                                           final MethodData methodData,
+                                           final MethodTimers parameterTimers,
+                                           final long start,
+                                           final CompletionStage<?> stage) {
+        if (stage instanceof CompletableFuture) {
+            final CompletableFuture<?> future = (CompletableFuture<?>) stage;
+            if (future.isDone()) {
+                final Throwable error = completionError(future);
+                record(error == null ? TimerDomain.SUCCESS : TimerDomain.FAILURE, error,
+                       config, methodData, parameterTimers, start);
+                return;
+            }
+        }
+        stage.whenComplete(new AsyncCompletion(config, methodData, parameterTimers, start));
+    }
+
+    private static Throwable completionError(final CompletableFuture<?> future) {
+        try {
+            future.getNow(null);
+            return null;
+        }
+        catch (CompletionException e) {
+            return e.getCause() != null ? e.getCause() : e;
+        }
+        catch (CancellationException e) {
+            return e;
+        }
+    }
+
+    /**
+     * @param error Exception the invocation failed with, null on success
+     */
+    static void record(final TimerDomain outcome,
+                       final Throwable error,
+                       final ConfigSnapshot config,
+                       final MethodData methodData,
+                       final MethodTimers parameterTimers,
+                       final long start) {
+        exitInFlight(config, methodData, parameterTimers);
+        final MethodTimers methodTimers = methodData.getTimers();
+        final Metered exceptionTimer = error != null ? exceptionTimer(config, methodData, error) : null;
+        if (start == NOT_SAMPLED) {
+            skipTimers(outcome, methodTimers, parameterTimers);
+            skipTimers(TimerDomain.ALL, methodTimers, parameterTimers);
+            skipTimer(exceptionTimer);
+            return;
+        }
+        final Options options = config.getOptions();
+        final long elapsedNanos = options.getClock().getTick() - start;
+        updateTimers(outcome, methodTimers, parameterTimers, elapsedNanos, options);
+        updateTimers(TimerDomain.ALL, methodTimers, parameterTimers, elapsedNanos, options);
+        if (exceptionTimer != null) {
+            updateTimer(exceptionTimer, elapsedNanos, options);
+        }
+        if (elapsedNanos >= options.getSlowCallThresholdNanos()) {
+            recordSlowCall(error, config, methodData, parameterTimers, elapsedNanos);
+        }
+    }
+
+    private static void recordSlowCall(final Throwable error,
+                                       final ConfigSnapshot config,
+                                       final MethodData methodData,
+                                       final MethodTimers parameterTimers,
+                                       final long elapsedNanos) {
+        methodData.getSlowCalls(config)
+                .offer(new SlowCall(methodData.getClassName(),
+                                    methodData.getMethodName(),
+                                    parameterTimers != null ? parameterTimers.getParameterString() : null,
+                                    elapsedNanos,
+                                    System.currentTimeMillis(),
+                                    Thread.currentThread().getName(),
+                                    error != null ? error.getClass().getName() : null));
+    }
+
+    private static void exitInFlight(final ConfigSnapshot config,
+                                     final MethodData methodData,
+                                     final MethodTimers parameterTimers) {
+        if (!config.getOptions().isInFlightTracking()) {
+            return;
+        }
+        final InFlightGauge inFlight = methodData.getInFlight(config);
+        if (inFlight != null) {
+            inFlight.exit();
+        }
+        if (parameterTimers != null && parameterTimers.getInFlight() != null) {
+            parameterTimers.getInFlight().exit();
+        }
+    }
+
+    private static Metered exceptionTimer(final ConfigSnapshot config,
+                                        final MethodData methodData,
+                                        final Throwable error) {
+        final ExceptionTimers exceptionTimers = methodData.getExceptionTimers(config);
+        return exceptionTimers != null ? exceptionTimers.get(error) : null;
+    }
+
+    /**
+     * Picks the term values of the metric term parameters to be used as key for the per method timer cache.
+     * @param extractors Extractors of the terms, in the same order as the positions, empty if none are set
+     * @return The term value itself for a single term, a {@link MetricTermsKey} for multiple terms, or null if any of
+     * the values can never contribute to the metric name
+     */
+    private static Object getMetricTerms(final Object[] args,
+                                         final List<Integer> paramPositions,
+                                         final List<TermExtractor<?>> extractors) {
+        if (paramPositions.size() == 1) {
+            final Object term = getMetricTerm(args, paramPositions, extractors, 0);
+            return TermDictionary.isTermType(term) ? term : null;
+        }
+        final Object[] values = new Object[paramPositions.size()];
+        for (int i = 0; i < values.length; i++) {
+            final Object term = getMetricTerm(args, paramPositions, extractors, i);
+            if (!TermDictionary.isTermType(term)) {
+                return null;
+            }
+            values[i] = term;
+        }
+        return new MetricTermsKey(values);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object getMetricTerm(final Object[] args,
+                                        final List<Integer> paramPositions,
+                                        final List<TermExtractor<?>> extractors,
+                                        final int index) {
+        final int pos = paramPositions.get(index);
+        if (pos >= args.length) {
+            log.warn("Unusual scenario: parameter position {} is >= args length {}", pos, args.length);
+            return null;
+        }
+        final Object value = args[pos];
+        final TermExtractor<Object> extractor = extractors.isEmpty()
+                                                ? null
+                                                : (TermExtractor<Object>) extractors.get(index);
+        if (extractor == null || value == null) {
+            return value;
+        }
+        try {
+            return extractor.extract(value);
+        }
+        catch (RuntimeException e) {
+            log.debug("Term extractor {} failed, recording without parameters", extractor.getClass().getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * @param terms Term values as returned by {@link #getMetricTerms}
+     */
+    private static Optional<String> getParamString(final ConfigSnapshot config, final Object terms) {
+        final Object[] values = terms instanceof MetricTermsKey
+                                ? ((MetricTermsKey) terms).getValues()
+                                : new Object[] {terms};
+        final TermDictionary termDictionary = config.getTermDictionary();
+        List<String> paramValues = Arrays.stream(values)
+                .map(termDictionary::term) // convert term value
+                .collect(Collectors.toList());
+        // if and only if after all transformations none of the parameter values are null or
+        // empty will we add the parameter string to the metric name
+        if (paramValues
+                .stream()
+                .noneMatch(Strings::isNullOrEmpty)) {
+            return Optional.of(Joiner.on(METRIC_DELIMITER).join(paramValues));
+        }
+        return Optional.empty();
+    }
+
+    private static void updateTimers(final TimerDomain domain,
+                                     final MethodTimers methodTimers,
+                                     final MethodTimers parameterTimers,
+                                     final long elapsedNanos,
+                                     final Options options) {
+        if (methodTimers != null) {
+            updateTimer(methodTimers.get(domain), elapsedNanos, options);
+        }
+        if (parameterTimers != null) {
+            updateTimer(parameterTimers.get(domain), elapsedNanos, options);
+        }
+    }
+
+    private static void skipTimers(final TimerDomain domain,
+                                   final MethodTimers methodTimers,
+                                   final MethodTimers parameterTimers) {
+        if (methodTimers != null) {
+            skipTimer(methodTimers.get(domain));
+        }
+        if (parameterTimers != null) {
+            skipTimer(parameterTimers.get(domain));
+        }
+    }
+
+    private static void skipTimer(Metered metric) {
+        if (metric instanceof SampledTimer) {
+            ((SampledTimer) metric).skip();
+        }
+        else if (metric instanceof Meter) {
+            ((Meter) metric).mark();
+        }
+    }
+
+    private static void updateTimer(Metered metric, long elapsedNanos, Options options) {
+        if (metric instanceof Meter) {
+            ((Meter) metric).mark();
+            return;
+        }
+        if (metric instanceof CompositeTimer) {
+            // Derived from the outcome timers when read
+            return;
+        }
+        final Timer timer = (Timer) metric;
+        if (options.isHighPrecisionTiming()) {
+            timer.update(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+        else {
+            timer.update(TimeUnit.NANOSECONDS.toMillis(elapsedNanos), TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+/**
+ * Encodes metric deltas in the InfluxDB line protocol, one line per metric:
+ * {@code <name> count=<delta>i[,b_<upper bound in nanoseconds>=<delta>i...] <timestamp in nanoseconds>}.
+ * Bucket fields are written for timers that count values in {@link HistogramBuckets}, and only for buckets with values
+ * recorded since the last export. They are not cumulative: a bucket field only counts values above the upper bound of
+ * the previous bucket, so the bucket fields of a line add up to its count. They are deliberately not named
+ * {@code le_}, which by convention denotes cumulative counts. Gauges are written as {@code <name> value=<value> <timestamp in nanoseconds>}.
+ * Metrics with {@link MetricTags} are written with the prefix as measurement instead of the name:
+ * {@code <prefix>,class=<class>,method=<method>,domain=<domain>[,terms=<parameter string>] count=...}.
+ */
+public class LineProtocolEncoder {
+
+    /**
+     * @param buckets Bucket layout, or null if there are no bucket deltas
+     * @param bucketDeltas Values recorded per bucket since the last export, ignored if the layout is null
+     */
+    public void appendDelta(StringBuilder out,
+                            String name,
+                            long countDelta,
+                            HistogramBuckets buckets,
+                            long[] bucketDeltas,
+                            long timestampMillis) {
+        appendName(out, name);
+        appendFields(out, countDelta, buckets, bucketDeltas, timestampMillis);
+    }
+
+    /**
+     * @param buckets Bucket layout, or null if there are no bucket deltas
+     * @param bucketDeltas Values recorded per bucket since the last export, ignored if the layout is null
+     */
+    public void appendDelta(StringBuilder out,
+                            MetricTags tags,
+                            long countDelta,
+                            HistogramBuckets buckets,
+                            long[] bucketDeltas,
+                            long timestampMillis) {
+        appendName(out, tags.getPrefix());
+        appendTag(out, "class", tags.getClassName());
+        appendTag(out, "method", tags.getMethodName());
+        appendTag(out, "domain", tags.getDomain().getValue());
+        if (tags.getTerms() != null) {
+            appendTag(out, "terms", tags.getTerms());
+        }
+        appendFields(out, countDelta, buckets, bucketDeltas, timestampMillis);
+    }
+
+    private static void appendFields(StringBuilder out,
+                                     long countDelta,
+                                     HistogramBuckets buckets,
+                                     long[] bucketDeltas,
+                                     long timestampMillis) {
+        out.append(" count=").append(countDelta).append('i');
+        if (buckets != null) {
+            for (int i = 0; i < bucketDeltas.length; i++) {
+                if (bucketDeltas[i] != 0) {
+                    out.append(",b_").append(buckets.highestValue(i)).append('=').append(bucketDeltas[i]).append('i');
+                }
+            }
+        }
+        appendTimestamp(out, timestampMillis);
+    }
+
+    /**
+     * Values that are not finite, NaN or infinity, are skipped. Line protocol has no representation for them, and a
+     * receiver rejects the whole batch if one of its lines has such a value.
+     */
+    public void appendValue(StringBuilder out, String name, Number value, long timestampMillis) {
+        final boolean integral
+                = value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+        if (!integral && !Double.isFinite(value.doubleValue())) {
+            return;
+        }
+        appendName(out, name);
+        out.append(" value=");
+        if (integral) {
+            out.append(value.longValue()).append('i');
+        }
+        else {
+            out.append(value.doubleValue());
+        }
+        appendTimestamp(out, timestampMillis);
+    }
+
+    private static void appendName(StringBuilder out, String name) {
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (c == ' ' || c == ',') {
+                out.append('\\');
+            }
+            out.append(c);
+        }
+    }
+
+    private static void appendTag(StringBuilder out, String key, String value) {
+        out.append(',').append(key).append('=');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == ' ' || c == ',' || c == '=') {
+                out.append('\\');
+            }
+            out.append(c);
+        }
+    }
+
+    private static void appendTimestamp(StringBuilder out, long timestampMillis) {
+        out.append(' ').append(timestampMillis).append("000000\n");
+    }
+}
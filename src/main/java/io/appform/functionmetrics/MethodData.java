@@ -16,20 +16,104 @@
 
 package io.appform.functionmetrics;
 
+import com.google.common.base.Strings;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 /**
  * Stores data about method call
  */
 public class MethodData {
+    // Different raw values can map to the same parameter string, e.g. with different case or surrounding spaces
+    private static final int MAX_RAW_VALUES_PER_PARAMETER = 4;
     private final String className;
     private final String methodName;
     private final List<Integer> parameterPositions;
+    private final ReservoirConfig reservoirConfig;
+    private final SamplingConfig samplingConfig;
+    private final MetricKind metricKind;
+    private final List<TermExtractor<?>> termExtractors;
+    private final TimersHandle timers;
+    private final AtomicReference<ConfigState> state = new AtomicReference<>();
+    private volatile InFlightGauge inFlight;
+    private volatile MetricStamp inFlightStamp;
 
     public MethodData(String className, String methodName, List<Integer> parameterIndex) {
+        this(className, methodName, parameterIndex, ReservoirConfig.DEFAULT);
+    }
+
+    public MethodData(String className,
+                      String methodName,
+                      List<Integer> parameterIndex,
+                      ReservoirConfig reservoirConfig) {
+        this(className, methodName, parameterIndex, reservoirConfig, SamplingConfig.DEFAULT);
+    }
+
+    public MethodData(String className,
+                      String methodName,
+                      List<Integer> parameterIndex,
+                      ReservoirConfig reservoirConfig,
+                      SamplingConfig samplingConfig) {
+        this(className, methodName, parameterIndex, reservoirConfig, samplingConfig, null);
+    }
+
+    /**
+     * @param metricKind Kind of metrics to keep for this method, null to use {@link Options#getMetricKind()}
+     */
+    public MethodData(String className,
+                      String methodName,
+                      List<Integer> parameterIndex,
+                      ReservoirConfig reservoirConfig,
+                      SamplingConfig samplingConfig,
+                      MetricKind metricKind) {
+        this(className, methodName, parameterIndex, reservoirConfig, samplingConfig, metricKind,
+             Collections.emptyList());
+    }
+
+    /**
+     * @param termExtractors Extractors of the metric terms, in the same order as the parameter positions. Entries are
+     *                       null for terms that use the parameter value as is. Empty if no term has an extractor.
+     */
+    public MethodData(String className,
+                      String methodName,
+                      List<Integer> parameterIndex,
+                      ReservoirConfig reservoirConfig,
+                      SamplingConfig samplingConfig,
+                      MetricKind metricKind,
+                      List<TermExtractor<?>> termExtractors) {
+        this(className, methodName, parameterIndex, reservoirConfig, samplingConfig, metricKind, termExtractors,
+             Collections.emptyList());
+    }
+
+    /**
+     * @param enumTermTypes Enum types of the metric terms that use the parameter value as is. Their constants are
+     *                      converted to terms here rather than on the first call that passes one of them.
+     */
+    public MethodData(String className,
+                      String methodName,
+                      List<Integer> parameterIndex,
+                      ReservoirConfig reservoirConfig,
+                      SamplingConfig samplingConfig,
+                      MetricKind metricKind,
+                      List<TermExtractor<?>> termExtractors,
+                      List<Class<?>> enumTermTypes) {
         this.className = className;
         this.methodName = methodName;
         this.parameterPositions = parameterIndex;
+        this.reservoirConfig = reservoirConfig;
+        this.samplingConfig = samplingConfig;
+        this.metricKind = metricKind;
+        this.termExtractors = termExtractors;
+        this.timers = new TimersHandle(this, null);
+        FunctionMetricsManager.registerEnumTerms(enumTermTypes);
     }
 
     public String getClassName() {
@@ -43,4 +127,222 @@ public class MethodData {
     public List<Integer> getParameterPositions() {
         return parameterPositions;
     }
+
+    /**
+     * @return Extractors of the metric terms, in the same order as {@link #getParameterPositions()}. Empty if no term
+     * has an extractor.
+     */
+    public List<TermExtractor<?>> getTermExtractors() {
+        return termExtractors;
+    }
+
+    public ReservoirConfig getReservoirConfig() {
+        return reservoirConfig;
+    }
+
+    public SamplingConfig getSamplingConfig() {
+        return samplingConfig;
+    }
+
+    /**
+     * @param options Options of the manager
+     * @return Kind of metrics kept for this method
+     */
+    public MetricKind getMetricKind(final Options options) {
+        return metricKind != null ? metricKind : options.getMetricKind();
+    }
+
+    /**
+     * @param config Configuration the current invocation runs with
+     * @return Sampler deciding which invocations are timed
+     */
+    public Sampler getSampler(final ConfigSnapshot config) {
+        return state(config).sampler;
+    }
+
+    /**
+     * In-flight gauge of the un-parameterized metric. Its registration is checked again only if metrics have been
+     * removed from the registry since it was last resolved.
+     * @param config Configuration the current invocation runs with
+     * @return Gauge, or null if the manager has not been initialized
+     */
+    InFlightGauge getInFlight(final ConfigSnapshot config) {
+        InFlightGauge current = inFlight;
+        final MetricStamp stamp = inFlightStamp;
+        if ((current == null || stamp == null || !stamp.isCurrent()) && config.isInitialized()) {
+            final MetricStamp resolvedStamp = FunctionMetricsManager.inFlightStamp(config, this, null);
+            current = FunctionMetricsManager.inFlightGauge(config, this, null);
+            inFlight = current;
+            inFlightStamp = resolvedStamp;
+        }
+        return current;
+    }
+
+    /**
+     * @param config Configuration the current invocation runs with
+     * @return Buffer keeping the slowest calls of this method. Resolved on first use, so only slow calls pay for it
+     */
+    SlowCallBuffer getSlowCalls(final ConfigSnapshot config) {
+        final ConfigState current = state(config);
+        SlowCallBuffer buffer = current.slowCalls;
+        if (buffer == null) {
+            buffer = FunctionMetricsManager.slowCallBuffer(config, this);
+            current.slowCalls = buffer;
+        }
+        return buffer;
+    }
+
+    /**
+     * Failure timers of this method broken down by exception type.
+     * @param config Configuration the current invocation runs with
+     * @return Exception timers, or null if {@link Options#isExceptionBreakdown()} is not set
+     */
+    ExceptionTimers getExceptionTimers(final ConfigSnapshot config) {
+        return state(config).exceptionTimers;
+    }
+
+    /**
+     * Timers for the un-parameterized metric of this method. These are resolved on first use and re-resolved only
+     * if the registry has dropped timers since.
+     * @return Timer handles, or null if the metrics manager has not been initialized yet
+     */
+    public MethodTimers getTimers() {
+        return timers.get();
+    }
+
+    /**
+     * Timers for the parameterized metric of this method. Handles are cached by the raw captured term values, so
+     * that the parameter string is built only the first time a set of term values is seen. Once
+     * {@link Options#getMaxParameterCardinality()} distinct parameter strings are tracked, all new ones are recorded
+     * under {@link Options#getParameterOverflowTerm()}. Values that do not produce a parameter string, and values
+     * recorded under the overflow term, are not cached and do not count towards the cardinality.
+     * @param config Configuration the current invocation runs with
+     * @param terms Captured term value, or a {@link MetricTermsKey} if multiple terms are captured
+     * @param parameterStringBuilder Builds the parameter string for a term value that is not cached
+     * @return Timer handles, or null if nothing needs to be recorded for these values
+     */
+    public MethodTimers getParameterTimers(final ConfigSnapshot config,
+                                           final Object terms,
+                                           final Function<Object, String> parameterStringBuilder) {
+        final ConfigState current = state(config);
+        TimersHandle handle = current.rawParameterTimers.get(terms);
+        if (handle == null) {
+            final String parameterString = parameterStringBuilder.apply(terms);
+            if (Strings.isNullOrEmpty(parameterString)) {
+                return null;
+            }
+            handle = current.parameterTimers(parameterString);
+            if (handle == null) {
+                handle = current.getOverflowTimers();
+            }
+            else if (handle.addAlias(MAX_RAW_VALUES_PER_PARAMETER)) {
+                current.rawParameterTimers.putIfAbsent(terms, handle);
+            }
+        }
+        return handle.get();
+    }
+
+    /**
+     * Drops handles of captured parameter values that have not been used in or after the given epoch, and removes
+     * their metrics from the registry. A handle that gets used while it is being evicted is put back.
+     * @param config Configuration the eviction runs with. Nothing is evicted if the method has not been invoked with it
+     * @param epoch Oldest {@link IdleTimerEvictor} epoch counted as recent use
+     * @return Number of parameter values evicted
+     */
+    int evictIdleParameterTimers(final ConfigSnapshot config, final int epoch) {
+        final ConfigState current = state.get();
+        if (current == null || current.config != config) {
+            return 0;
+        }
+        final Set<TimersHandle> evicted = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Map.Entry<String, TimersHandle> entry : current.parameterTimers.entrySet()) {
+            final TimersHandle handle = entry.getValue();
+            if (!handle.isIdleSince(epoch) || !current.parameterTimers.remove(entry.getKey(), handle)) {
+                continue;
+            }
+            if (!handle.isIdleSince(epoch)) {
+                current.parameterTimers.putIfAbsent(entry.getKey(), handle);
+                continue;
+            }
+            current.parameterCardinality.decrementAndGet();
+            evicted.add(handle);
+        }
+        if (!evicted.isEmpty()) {
+            current.rawParameterTimers.values().removeIf(evicted::contains);
+            evicted.forEach(handle -> FunctionMetricsManager.removeParameterMetrics(
+                    config, this, handle.getParameterString()));
+        }
+        return evicted.size();
+    }
+
+    /**
+     * Caches that depend on the configuration are kept together and dropped as a whole when the configuration of
+     * the manager changes, so that a reconfiguration never mixes parameter strings, samplers or exception timers
+     * built under different options.
+     */
+    private ConfigState state(final ConfigSnapshot config) {
+        ConfigState current = state.get();
+        while (current == null || current.config != config) {
+            final ConfigState updated = new ConfigState(config);
+            if (state.compareAndSet(current, updated)) {
+                return updated;
+            }
+            current = state.get();
+        }
+        return current;
+    }
+
+    private final class ConfigState {
+        private final ConfigSnapshot config;
+        private final Sampler sampler;
+        private final ExceptionTimers exceptionTimers;
+        // Keyed by parameter string, holds at most maxParameterCardinality handles
+        private final Map<String, TimersHandle> parameterTimers = new ConcurrentHashMap<>();
+        // Keyed by raw captured term values, holds at most MAX_RAW_VALUES_PER_PARAMETER values per handle
+        private final Map<Object, TimersHandle> rawParameterTimers = new ConcurrentHashMap<>();
+        private final AtomicInteger parameterCardinality = new AtomicInteger();
+        private volatile TimersHandle overflowTimers;
+        private volatile SlowCallBuffer slowCalls;
+
+        private ConfigState(ConfigSnapshot config) {
+            this.config = config;
+            this.sampler = config.isInitialized()
+                           ? Sampler.create(samplingConfig, config.getOptions())
+                           : Sampler.ALWAYS;
+            this.exceptionTimers = config.getOptions().isExceptionBreakdown()
+                                   ? new ExceptionTimers(MethodData.this, config.getOptions())
+                                   : null;
+        }
+
+        /**
+         * @return Handle for the parameter string, or null if it is new and the cardinality limit has been reached
+         */
+        private TimersHandle parameterTimers(final String parameterString) {
+            final TimersHandle handle = parameterTimers.get(parameterString);
+            if (handle != null) {
+                return handle;
+            }
+            if (parameterCardinality.incrementAndGet() > config.getOptions().getMaxParameterCardinality()) {
+                parameterCardinality.decrementAndGet();
+                return null;
+            }
+            final TimersHandle created = new TimersHandle(MethodData.this, parameterString);
+            final TimersHandle existing = parameterTimers.putIfAbsent(parameterString, created);
+            if (existing != null) {
+                parameterCardinality.decrementAndGet();
+                return existing;
+            }
+            IdleTimerEvictor.track(MethodData.this);
+            return created;
+        }
+
+        private TimersHandle getOverflowTimers() {
+            TimersHandle handle = overflowTimers;
+            if (handle == null) {
+                handle = new TimersHandle(MethodData.this, config.getOptions().getParameterOverflowTerm());
+                overflowTimers = handle;
+            }
+            return handle;
+        }
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metered;
+
+/**
+ * Metrics for all {@link TimerDomain}s of a single metric name, resolved once from the registry. Depending on the
+ * {@link MetricKind} of the function, each domain is backed by a {@link com.codahale.metrics.Timer} or a {@link Meter}.
+ * Handles are stamped with the {@link MetricStamp} they were resolved with, so that they can be dropped once one of
+ * their metrics is removed from the registry or the manager is re-initialized.
+ */
+public class MethodTimers {
+    private final Metered success;
+    private final Metered failure;
+    private final Metered all;
+    private final InFlightGauge inFlight;
+    private final String parameterString;
+    private final MetricStamp stamp;
+    private final boolean sampleable;
+
+    MethodTimers(Metered success,
+                 Metered failure,
+                 Metered all,
+                 InFlightGauge inFlight,
+                 String parameterString,
+                 MetricStamp stamp) {
+        this.success = success;
+        this.failure = failure;
+        this.all = all;
+        this.inFlight = inFlight;
+        this.parameterString = parameterString;
+        this.stamp = stamp;
+        this.sampleable = isCountable(success) && isCountable(failure) && isCountable(all);
+    }
+
+    public Metered get(TimerDomain domain) {
+        switch (domain) {
+            case SUCCESS:
+                return success;
+            case FAILURE:
+                return failure;
+            case ALL:
+            default:
+                return all;
+        }
+    }
+
+    public Metered getSuccess() {
+        return success;
+    }
+
+    public Metered getFailure() {
+        return failure;
+    }
+
+    public Metered getAll() {
+        return all;
+    }
+
+    /**
+     * @return In-flight gauge of a parameterized metric, null if in-flight invocations are not tracked for it
+     */
+    public InFlightGauge getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return Parameter string of a parameterized metric, null for the un-parameterized metric
+     */
+    public String getParameterString() {
+        return parameterString;
+    }
+
+    /**
+     * @return true if all metrics can count invocations that are not timed, so that invocations can be sampled
+     * without losing counts
+     */
+    public boolean isSampleable() {
+        return sampleable;
+    }
+
+    public boolean isCurrent() {
+        return stamp.isCurrent();
+    }
+
+    private static boolean isCountable(Metered metric) {
+        return metric instanceof SampledTimer || metric instanceof Meter || metric instanceof CompositeTimer;
+    }
+}
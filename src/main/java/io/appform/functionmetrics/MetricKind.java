@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+/**
+ * Kind of metrics kept for a monitored function.
+ */
+public enum MetricKind {
+    /**
+     * Timers for {@link TimerDomain#SUCCESS}, {@link TimerDomain#FAILURE} and {@link TimerDomain#ALL}. Every call
+     * reads the clock and updates two reservoirs.
+     */
+    TIMER,
+    /**
+     * Meters for all domains. Calls are only counted in striped counters, the clock is never read and no reservoirs
+     * are kept. Use this for functions that need call and error rates but no latency distribution.
+     */
+    METER,
+    /**
+     * A timer for {@link TimerDomain#ALL} and meters for {@link TimerDomain#SUCCESS} and {@link TimerDomain#FAILURE}.
+     * Keeps the overall latency distribution while updating a single reservoir per call.
+     */
+    HYBRID;
+
+    /**
+     * @return Metric kind set on the annotation, or null if {@link Options#getMetricKind()} is to be used
+     */
+    public static MetricKind of(MonitoredFunction monitoredFunction) {
+        final MetricKind[] kinds = monitoredFunction.metricKind();
+        return kinds.length > 0 ? kinds[0] : null;
+    }
+
+    boolean isTimed(TimerDomain domain) {
+        switch (this) {
+            case METER:
+                return false;
+            case HYBRID:
+                return domain == TimerDomain.ALL;
+            case TIMER:
+            default:
+                return true;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+/**
+ * Validity of a cached handle to registry metrics. A stamp records the configuration generation the handle was
+ * resolved in, and a removal token for each metric name it uses. It stops being current once the manager is
+ * re-initialized or reconfigured, or once one of its own metrics is removed from the registry. Removing other
+ * metrics does not affect it.
+ */
+final class MetricStamp {
+    private final int generation;
+    private final Token[] tokens;
+
+    MetricStamp(int generation, Token... tokens) {
+        this.generation = generation;
+        this.tokens = tokens;
+    }
+
+    boolean isCurrent() {
+        if (generation != FunctionMetricsManager.generation()) {
+            return false;
+        }
+        for (Token token : tokens) {
+            if (token.removed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removal token of a single metric name. A token is handed out until the metric is removed, after which the
+     * name gets a fresh one.
+     */
+    static final class Token {
+        private volatile boolean removed;
+
+        void remove() {
+            removed = true;
+        }
+    }
+}
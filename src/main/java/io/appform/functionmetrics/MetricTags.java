@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import java.util.Objects;
+
+/**
+ * Identity of a metric in dimensional mode: the function, the domain and the captured parameter string, as tags
+ * instead of parts of a dotted name. Instances are interned by {@link TaggedMetrics}, which assigns each one a small
+ * integer id. The dotted name the metric would have in the registry is kept for reporters that do not understand tags.
+ */
+public final class MetricTags {
+    private final String prefix;
+    private final String className;
+    private final String methodName;
+    private final TimerDomain domain;
+    private final String terms;
+    private final String name;
+    private final int id;
+
+    MetricTags(String prefix,
+               String className,
+               String methodName,
+               TimerDomain domain,
+               String terms,
+               String name,
+               int id) {
+        this.prefix = prefix;
+        this.className = className;
+        this.methodName = methodName;
+        this.domain = domain;
+        this.terms = terms;
+        this.name = name;
+        this.id = id;
+    }
+
+    /**
+     * @return Prefix the manager was initialized with, used as measurement name by tag aware sinks
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public TimerDomain getDomain() {
+        return domain;
+    }
+
+    /**
+     * @return Captured parameter string, null for the un-parameterized metric
+     */
+    public String getTerms() {
+        return terms;
+    }
+
+    /**
+     * @return Name of the metric in the registry
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Id of the metric in {@link TaggedMetrics}, -1 if these tags have not been interned
+     */
+    public int getId() {
+        return id;
+    }
+
+    MetricTags withId(int id) {
+        return new MetricTags(prefix, className, methodName, domain, terms, name, id);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MetricTags)) {
+            return false;
+        }
+        final MetricTags other = (MetricTags) o;
+        return domain == other.domain
+                && prefix.equals(other.prefix)
+                && className.equals(other.className)
+                && methodName.equals(other.methodName)
+                && Objects.equals(terms, other.terms);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(prefix, className, methodName, domain, terms);
+    }
+
+    @Override
+    public String toString() {
+        return "class=" + className + ",method=" + methodName + ",domain=" + domain.getValue()
+                + (terms != null ? ",terms=" + terms : "");
+    }
+}
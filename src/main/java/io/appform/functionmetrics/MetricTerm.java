@@ -44,8 +44,12 @@ import java.lang.annotation.Target;
  * Note how the parameter value is trimmed, lower-cased and stripped of non-alphabetic characters.
  * If there were multiple parameters annotated with {@link MetricTerm} in the function bar, then their string values are simply joined together by a dot.
  * The order of formal parameters in the method signature is maintained in generating the concatenated metric name component for parameter values.
- * NOTE: Formal parameters annotated with this annotation must be of type {@code String or @code Enum}, otherwise the string value of parameter is ignored
- * Also, formal parameter values must match this regexp ^[a-zA-Z_][a-zA-Z_0-9]*. See {@link FunctionMetricConstants}.
+ * NOTE: Formal parameters annotated with this annotation must be of type {@code String}, {@code Enum}, an integral
+ * number ({@code int}, {@code long}, {@code short}, {@code byte} or their boxed types) or {@code boolean}, unless an
+ * {@link #extractor()} is set.
+ * For any other type no parameterized metric is recorded.
+ * String and enum values must match this regexp ^[a-zA-Z_][a-zA-Z_0-9]*. See {@link FunctionMetricConstants}.
+ * Numbers and booleans are used as is.
  *
  */
 @Retention(RetentionPolicy.RUNTIME)
@@ -55,4 +59,10 @@ public @interface MetricTerm {
     // the parameter values are sorted in ascending order of this param to derive the metric name
     // setting explicit order helps to maintain consistent metric names across formal parameter sequence changes in method signature
     int order() default 0;
+
+    /**
+     * Derives the term from the parameter value. By default the parameter value is used as is.
+     */
+    @SuppressWarnings("rawtypes")
+    Class<? extends TermExtractor> extractor() default TermExtractor.None.class;
 }
@@ -38,4 +38,65 @@ public @interface MonitoredFunction {
      * @return Method name if provided, otherwise actual method name is used.
      */
     String method() default "";
+
+    /**
+     * Override the reservoir type used for timers of this method.
+     * @return At most one reservoir type. If empty, {@link Options#getTimerType()} is used.
+     */
+    TimerReservoirType[] timerReservoirType() default {};
+
+    /**
+     * Override the window length of {@link TimerReservoirType#SLIDING} reservoirs for this method.
+     * @return Window length in seconds, or 0 to use {@link Options#getSlidingWindowSeconds()}
+     */
+    long slidingWindowSeconds() default 0;
+
+    /**
+     * Override the sample size of {@link TimerReservoirType#DECAYING} reservoirs for this method.
+     * @return Sample size, or 0 to use {@link Options#getDecayingSize()}
+     */
+    int decayingSize() default 0;
+
+    /**
+     * Override the decay factor of {@link TimerReservoirType#DECAYING} reservoirs for this method.
+     * @return Decay factor, or 0 to use {@link Options#getDecayingAlpha()}
+     */
+    double decayingAlpha() default 0;
+
+    /**
+     * Override the precision of {@link TimerReservoirType#HDR_HISTOGRAM} reservoirs for this method, 1 to 5. Larger
+     * values are capped at 5 with a warning, and are rejected by the annotation processor.
+     * @return Number of significant digits, or 0 to use {@link Options#getHistogramPrecision()}
+     */
+    int histogramPrecision() default 0;
+
+    /**
+     * Override the sampling mode for this method.
+     * @return At most one sampling mode. If empty, {@link Options#getSamplingMode()} is used.
+     */
+    SamplingMode[] sampling() default {};
+
+    /**
+     * Override the probability with which invocations are timed in {@link SamplingMode#FIXED_RATE} mode.
+     * @return Probability between 0 and 1, or 0 to use {@link Options#getSamplingRate()}
+     */
+    double samplingRate() default 0;
+
+    /**
+     * Override N in {@link SamplingMode#ONE_IN_N} mode.
+     * @return Interval, or 0 to use {@link Options#getSamplingInterval()}
+     */
+    int samplingInterval() default 0;
+
+    /**
+     * Override the number of invocations timed per second in {@link SamplingMode#ADAPTIVE} mode.
+     * @return Target rate, or 0 to use {@link Options#getSamplingTargetPerSecond()}
+     */
+    int samplingTargetPerSecond() default 0;
+
+    /**
+     * Override the kind of metrics kept for this method.
+     * @return At most one metric kind. If empty, {@link Options#getMetricKind()} is used.
+     */
+    MetricKind[] metricKind() default {};
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns name components to small integer ids, so that caches can be keyed by ids instead of strings built for every
+ * lookup. Ids are never released. Once the dictionary is full, new names get {@link #NO_ID} and callers are expected
+ * to fall back to working with the strings.
+ */
+final class NameDictionary {
+    static final int NO_ID = -1;
+
+    private final int maxSize;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    // Guarded by this for writes
+    private volatile String[] names = new String[64];
+    private int size;
+
+    NameDictionary(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return Id of the name, or {@link #NO_ID} if the name is not known and the dictionary is full
+     */
+    int id(String name) {
+        final Integer id = ids.get(name);
+        return id != null ? id : register(name);
+    }
+
+    /**
+     * @return Name with the given id, null if there is none
+     */
+    String name(int id) {
+        final String[] current = names;
+        return id >= 0 && id < current.length ? current[id] : null;
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+    private synchronized int register(String name) {
+        final Integer existing = ids.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        if (size >= maxSize) {
+            return NO_ID;
+        }
+        final int id = size++;
+        String[] current = names;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, id * 2);
+        }
+        current[id] = name;
+        // Publish the element before the id can be seen through the map
+        names = current;
+        ids.put(name, id);
+        return id;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A {@link Reservoir} with the same bucket layout and interval handling as {@link HdrHistogramReservoir}, that keeps
+ * its bucket counts in direct memory. Buckets are grouped into pages of {@value #PAGE_BUCKETS} consecutive buckets,
+ * and a page is only allocated the first time a value falls into one of its buckets. A page holds the counts of its
+ * buckets for three interval slots and a slot for running totals, {@value #PAGE_BYTES} bytes in all. The heap only
+ * holds a few small objects per allocated page.
+ * Each power of two of the recorded range takes 16 buckets at precision 1, 128 buckets (two pages, 4 KiB) at the
+ * default precision of 2 and 1024 buckets (16 pages, 32 KiB) at precision 3. A timer whose values spread from 1 ms to
+ * 100 ms touches about seven powers of two, and so holds about 28 KiB of direct memory at precision 2, while a timer
+ * whose values stay close to each other holds one or two pages. This is meant for timers created per captured
+ * parameter value, where tens of thousands of timers can exist.
+ * Direct memory is released when the reservoir is garbage collected. It counts towards
+ * {@code -XX:MaxDirectMemorySize}.
+ */
+public class OffHeapHistogramReservoir implements Reservoir, BucketCounts {
+    static final int PAGE_BUCKETS = 64;
+    private static final VarHandle COUNTS = MethodHandles.byteBufferViewVarHandle(long[].class,
+                                                                                  ByteOrder.nativeOrder());
+    private static final int SLOTS = 3;
+    private static final int RETIRED_SLOT = SLOTS;
+    private static final int PAGE_SHIFT = Integer.numberOfTrailingZeros(PAGE_BUCKETS);
+    private static final int SLOT_BYTES = PAGE_BUCKETS * Long.BYTES;
+    static final int PAGE_BYTES = (SLOTS + 1) * SLOT_BYTES;
+
+    private final HistogramBuckets buckets;
+    private final long intervalNanos;
+    private final Clock clock;
+    private final AtomicReferenceArray<ByteBuffer> pages;
+    private final AtomicReference<Intervals> intervals;
+    // Guarded by this. Counts of closed intervals are only added to the retired slot once totals have been asked for
+    private boolean retiring;
+
+    public OffHeapHistogramReservoir(int significantDigits, long interval, TimeUnit unit) {
+        this(new HistogramBuckets(significantDigits, HdrHistogramReservoir.DEFAULT_HIGHEST_TRACKABLE_VALUE),
+             interval, unit, Clock.defaultClock());
+    }
+
+    public OffHeapHistogramReservoir(HistogramBuckets buckets, long interval, TimeUnit unit, Clock clock) {
+        this.buckets = buckets;
+        this.intervalNanos = unit.toNanos(interval);
+        this.clock = clock;
+        this.pages = new AtomicReferenceArray<>((buckets.size() + PAGE_BUCKETS - 1) >>> PAGE_SHIFT);
+        this.intervals = new AtomicReference<>(new Intervals(1, 0, clock.getTick(), false));
+    }
+
+    @Override
+    public int size() {
+        return getSnapshot().size();
+    }
+
+    @Override
+    public void update(long value) {
+        final int index = buckets.index(value);
+        COUNTS.getAndAdd(page(index >>> PAGE_SHIFT), offset(intervals.get().current, index), 1L);
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        final Intervals snapshotIntervals = rotateIfDue();
+        final long[] snapshotCounts = new long[buckets.size()];
+        forEachAllocated((page, index) -> snapshotCounts[index]
+                = (long) COUNTS.getVolatile(page, offset(snapshotIntervals.previous, index))
+                + (long) COUNTS.getVolatile(page, offset(snapshotIntervals.current, index)));
+        return new BucketSnapshot(buckets, snapshotCounts);
+    }
+
+    @Override
+    public HistogramBuckets getBuckets() {
+        return buckets;
+    }
+
+    @Override
+    public synchronized void addTotalCounts(long[] totals) {
+        retiring = true;
+        final Intervals current = intervals.get();
+        forEachAllocated((page, index) -> totals[index]
+                += (long) COUNTS.getVolatile(page, offset(RETIRED_SLOT, index))
+                + (long) COUNTS.getVolatile(page, offset(current.previous, index))
+                + (long) COUNTS.getVolatile(page, offset(current.current, index))
+                + (current.staleFreeSlot ? (long) COUNTS.getVolatile(page, offset(current.free(), index)) : 0L));
+    }
+
+    /**
+     * @return Bytes of direct memory held by this reservoir
+     */
+    public int getOffHeapBytes() {
+        int bytes = 0;
+        for (int i = 0; i < pages.length(); i++) {
+            final ByteBuffer page = pages.get(i);
+            bytes += page != null ? page.capacity() : 0;
+        }
+        return bytes;
+    }
+
+    private Intervals rotateIfDue() {
+        final Intervals existing = intervals.get();
+        final long now = clock.getTick();
+        if (now - existing.startTick < intervalNanos) {
+            return existing;
+        }
+        synchronized (this) {
+            if (intervals.get() != existing) {
+                return intervals.get();
+            }
+            // The slot that is neither current nor previous dropped out of snapshots with the last rotation and is
+            // reused. Writers that picked up the old current slot land in previous, which is still part of
+            // snapshots.
+            final int next = existing.free();
+            if (existing.staleFreeSlot) {
+                retire(next);
+            }
+            retire(existing.previous);
+            clear(next);
+            if (now - existing.startTick < 2 * intervalNanos) {
+                final Intervals rotated = new Intervals(existing.current, next, now, false);
+                intervals.set(rotated);
+                return rotated;
+            }
+            // The current interval is older than a full interval as well. Previous is reused for the new current
+            // interval, and the old current slot is left out of snapshots. It is only retired and reused with the
+            // next rotation, so that writers that picked it up still count in totals.
+            clear(existing.previous);
+            final Intervals rotated = new Intervals(next, existing.previous, now, true);
+            intervals.set(rotated);
+            return rotated;
+        }
+    }
+
+    // Guarded by this
+    private void retire(int slot) {
+        if (!retiring) {
+            return;
+        }
+        forEachAllocated((page, index) -> COUNTS.getAndAdd(page, offset(RETIRED_SLOT, index),
+                                                           (long) COUNTS.getVolatile(page, offset(slot, index))));
+    }
+
+    private void clear(int slot) {
+        forEachAllocated((page, index) -> COUNTS.setVolatile(page, offset(slot, index), 0L));
+    }
+
+    /**
+     * Pages allocated concurrently may be skipped. Their counts were zero when the iteration started.
+     */
+    private void forEachAllocated(BucketConsumer consumer) {
+        for (int i = 0; i < pages.length(); i++) {
+            final ByteBuffer page = pages.get(i);
+            if (page == null) {
+                continue;
+            }
+            final int first = i << PAGE_SHIFT;
+            final int last = Math.min(first + PAGE_BUCKETS, buckets.size());
+            for (int index = first; index < last; index++) {
+                consumer.accept(page, index);
+            }
+        }
+    }
+
+    private ByteBuffer page(int pageIndex) {
+        final ByteBuffer page = pages.get(pageIndex);
+        if (page != null) {
+            return page;
+        }
+        // Atomic access through the view var handle needs 8 byte aligned offsets
+        final ByteBuffer allocated = ByteBuffer.allocateDirect(PAGE_BYTES + Long.BYTES - 1).alignedSlice(Long.BYTES);
+        return pages.compareAndSet(pageIndex, null, allocated) ? allocated : pages.get(pageIndex);
+    }
+
+    private static int offset(int slot, int index) {
+        return slot * SLOT_BYTES + (index & (PAGE_BUCKETS - 1)) * Long.BYTES;
+    }
+
+    @FunctionalInterface
+    private interface BucketConsumer {
+        void accept(ByteBuffer page, int index);
+    }
+
+    private static final class Intervals {
+        private final int previous;
+        private final int current;
+        private final long startTick;
+        // The free slot holds a closed interval that is not part of snapshots any more, but has not been retired yet
+        private final boolean staleFreeSlot;
+
+        private Intervals(int previous, int current, long startTick, boolean staleFreeSlot) {
+            this.previous = previous;
+            this.current = current;
+            this.startTick = startTick;
+            this.staleFreeSlot = staleFreeSlot;
+        }
+
+        private int free() {
+            return SLOTS - current - previous;
+        }
+    }
+}
@@ -16,14 +16,56 @@
 
 package io.appform.functionmetrics;
 
+import com.codahale.metrics.Clock;
 import com.google.common.base.CaseFormat;
 import com.google.common.base.Converter;
+import com.google.common.base.Strings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class Options {
+    public static final int DEFAULT_MAX_PARAMETER_CARDINALITY = 1000;
+
     private boolean enableParameterCapture;
     private Converter<String, String> caseFormatConverter = CaseFormat.LOWER_CAMEL.converterTo(CaseFormat.LOWER_CAMEL);
     private boolean disableCacheOptimisation;
     private TimerReservoirType timerReservoirType = TimerReservoirType.SLIDING;
+    private int maxParameterCardinality = DEFAULT_MAX_PARAMETER_CARDINALITY;
+    private String parameterOverflowTerm = "other";
+    private boolean highPrecisionTiming;
+    private Clock clock = Clock.defaultClock();
+    private RecordingMode recordingMode = RecordingMode.DIRECT;
+    private int recordingBufferSize = 64;
+    private long recordingFlushIntervalMillis = 100;
+    private int histogramPrecision = 2;
+    private long histogramIntervalSeconds = 60;
+    private long slidingWindowSeconds = 60;
+    private int decayingSize = 1028;
+    private double decayingAlpha = 0.015;
+    private SamplingMode samplingMode = SamplingMode.NONE;
+    private double samplingRate = 0.01;
+    private int samplingInterval = 100;
+    private int samplingTargetPerSecond = 1000;
+    private boolean asyncCompletionTiming;
+    private boolean pinningDetection;
+    private long pinningThresholdMillis = 20;
+    private boolean exceptionBreakdown;
+    private int maxExceptionTypes = 10;
+    private List<Class<? extends Throwable>> exceptionTypes = Collections.emptyList();
+    private String exceptionOverflowTerm = "other";
+    private MetricKind metricKind = MetricKind.TIMER;
+    private boolean derivedAllTimer;
+    private TimerReservoirType parameterReservoirType;
+    private long parameterIdleTimeoutMillis;
+    private boolean inFlightTracking;
+    private long slowCallThresholdNanos = Long.MAX_VALUE;
+    private int slowCallCapacity = 10;
+    private long slowCallWindowMillis = TimeUnit.MINUTES.toMillis(1);
+    private boolean dimensionalMetrics;
+    private boolean dimensionalOnly;
 
     public boolean isEnableParameterCapture() {
         return enableParameterCapture;
@@ -37,6 +79,12 @@ public class Options {
         return disableCacheOptimisation;
     }
 
+    /**
+     * @deprecated Options are read when they are passed to {@link FunctionMetricsManager#initialize} or
+     * {@link FunctionMetricsManager#reconfigure}, so changing them afterwards has no effect on the manager. Use
+     * {@link OptionsBuilder#disableCacheOptimisation(boolean)} and reconfigure the manager instead.
+     */
+    @Deprecated
     public void setDisableCacheOptimisation(boolean disableCacheOptimisation) {
         this.disableCacheOptimisation = disableCacheOptimisation;
     }
@@ -45,11 +93,192 @@ public class Options {
         return timerReservoirType;
     }
 
+    public int getMaxParameterCardinality() {
+        return maxParameterCardinality;
+    }
+
+    public String getParameterOverflowTerm() {
+        return parameterOverflowTerm;
+    }
+
+    public boolean isHighPrecisionTiming() {
+        return highPrecisionTiming;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    public MetricKind getMetricKind() {
+        return metricKind;
+    }
+
+    public boolean isDerivedAllTimer() {
+        return derivedAllTimer;
+    }
+
+    /**
+     * @return Reservoir type for parameterized timers, null if they use {@link #getTimerType()}
+     */
+    public TimerReservoirType getParameterReservoirType() {
+        return parameterReservoirType;
+    }
+
+    /**
+     * @return Time after which timers of an unused parameter value are removed, 0 if they are kept forever
+     */
+    public long getParameterIdleTimeoutMillis() {
+        return parameterIdleTimeoutMillis;
+    }
+
+    public boolean isInFlightTracking() {
+        return inFlightTracking;
+    }
+
+    /**
+     * @return Duration above which invocations are kept as {@link SlowCall}s, {@link Long#MAX_VALUE} if slow calls
+     * are not captured
+     */
+    public long getSlowCallThresholdNanos() {
+        return slowCallThresholdNanos;
+    }
+
+    public int getSlowCallCapacity() {
+        return slowCallCapacity;
+    }
+
+    public long getSlowCallWindowMillis() {
+        return slowCallWindowMillis;
+    }
+
+    /**
+     * @return true if function metrics are indexed by tags in {@link FunctionMetricsManager#taggedMetrics()}
+     */
+    public boolean isDimensionalMetrics() {
+        return dimensionalMetrics || dimensionalOnly;
+    }
+
+    /**
+     * @return true if function metrics are kept in the tagged index only, and not registered by name
+     */
+    public boolean isDimensionalOnly() {
+        return dimensionalOnly;
+    }
+
+    public RecordingMode getRecordingMode() {
+        return recordingMode;
+    }
+
+    public int getRecordingBufferSize() {
+        return recordingBufferSize;
+    }
+
+    public long getRecordingFlushIntervalMillis() {
+        return recordingFlushIntervalMillis;
+    }
+
+    public int getHistogramPrecision() {
+        return histogramPrecision;
+    }
+
+    public long getHistogramIntervalSeconds() {
+        return histogramIntervalSeconds;
+    }
+
+    public long getSlidingWindowSeconds() {
+        return slidingWindowSeconds;
+    }
+
+    public int getDecayingSize() {
+        return decayingSize;
+    }
+
+    public double getDecayingAlpha() {
+        return decayingAlpha;
+    }
+
+    public SamplingMode getSamplingMode() {
+        return samplingMode;
+    }
+
+    public double getSamplingRate() {
+        return samplingRate;
+    }
+
+    public int getSamplingInterval() {
+        return samplingInterval;
+    }
+
+    public int getSamplingTargetPerSecond() {
+        return samplingTargetPerSecond;
+    }
+
+    public boolean isAsyncCompletionTiming() {
+        return asyncCompletionTiming;
+    }
+
+    public boolean isPinningDetection() {
+        return pinningDetection;
+    }
+
+    public long getPinningThresholdMillis() {
+        return pinningThresholdMillis;
+    }
+
+    public boolean isExceptionBreakdown() {
+        return exceptionBreakdown;
+    }
+
+    public int getMaxExceptionTypes() {
+        return maxExceptionTypes;
+    }
+
+    public List<Class<? extends Throwable>> getExceptionTypes() {
+        return exceptionTypes;
+    }
+
+    public String getExceptionOverflowTerm() {
+        return exceptionOverflowTerm;
+    }
+
     public static class OptionsBuilder {
         private boolean enableParameterCapture;
         private Converter<String, String> caseFormatConverter;
         private boolean disableCacheOptimisation;
         private TimerReservoirType timerReservoirType;
+        private int maxParameterCardinality;
+        private String parameterOverflowTerm;
+        private boolean highPrecisionTiming;
+        private Clock clock;
+        private RecordingMode recordingMode;
+        private int recordingBufferSize;
+        private long recordingFlushIntervalMillis;
+        private int histogramPrecision;
+        private long histogramIntervalSeconds;
+        private long slidingWindowSeconds;
+        private int decayingSize;
+        private double decayingAlpha;
+        private SamplingMode samplingMode;
+        private double samplingRate;
+        private int samplingInterval;
+        private int samplingTargetPerSecond;
+        private boolean asyncCompletionTiming;
+        private boolean pinningDetection;
+        private long pinningThresholdMillis;
+        private boolean exceptionBreakdown;
+        private int maxExceptionTypes;
+        private List<Class<? extends Throwable>> exceptionTypes;
+        private String exceptionOverflowTerm;
+        private MetricKind metricKind;
+        private boolean derivedAllTimer;
+        private TimerReservoirType parameterReservoirType;
+        private long parameterIdleTimeoutMillis;
+        private boolean inFlightTracking;
+        private long slowCallThresholdNanos;
+        private int slowCallCapacity;
+        private long slowCallWindowMillis;
+        private boolean dimensionalMetrics;
+        private boolean dimensionalOnly;
 
         public OptionsBuilder enableParameterCapture(final boolean enableParameterCapture) {
             this.enableParameterCapture = enableParameterCapture;
@@ -75,7 +304,326 @@ public class Options {
             return this;
         }
 
+        /**
+         * Limit the number of distinct parameter strings tracked per method when parameter capture is enabled.
+         * Values seen after the limit is reached are recorded under the overflow term. Values that do not produce a
+         * valid parameter string are not recorded and do not count towards the limit. Defaults to
+         * {@value #DEFAULT_MAX_PARAMETER_CARDINALITY}, use {@link Integer#MAX_VALUE} to track every value.
+         */
+        public OptionsBuilder maxParameterCardinality(final int maxParameterCardinality) {
+            this.maxParameterCardinality = maxParameterCardinality;
+            return this;
+        }
+
+        /**
+         * Metric term used in place of parameter values once {@link #maxParameterCardinality(int)} is exceeded.
+         */
+        public OptionsBuilder parameterOverflowTerm(final String parameterOverflowTerm) {
+            this.parameterOverflowTerm = parameterOverflowTerm;
+            return this;
+        }
+
+        /**
+         * Record durations in nanoseconds instead of truncating them to milliseconds.
+         * Without this, calls that complete in under a millisecond are recorded as taking 0 ms.
+         */
+        public OptionsBuilder highPrecisionTiming(final boolean highPrecisionTiming) {
+            this.highPrecisionTiming = highPrecisionTiming;
+            return this;
+        }
+
+        /**
+         * Clock used to measure durations. Defaults to {@link Clock#defaultClock()}, which uses {@link System#nanoTime()}.
+         * Use a {@link CoarseClock} to trade precision for cheaper clock reads on very hot methods.
+         */
+        public OptionsBuilder clock(final Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Kind of metrics kept for functions that do not set {@link MonitoredFunction#metricKind()}. Defaults to
+         * {@link MetricKind#TIMER}. See {@link MetricKind}.
+         */
+        public OptionsBuilder metricKind(final MetricKind metricKind) {
+            this.metricKind = metricKind;
+            return this;
+        }
+
+        /**
+         * Derive the {@link TimerDomain#ALL} timer of {@link MetricKind#TIMER} functions from the success and failure
+         * timers when it is read, instead of updating it on every invocation. This halves the timer updates per
+         * invocation. See {@link CompositeTimer}.
+         */
+        public OptionsBuilder derivedAllTimer(final boolean derivedAllTimer) {
+            this.derivedAllTimer = derivedAllTimer;
+            return this;
+        }
+
+        /**
+         * Reservoir type for timers of captured parameter values, unless a method sets its own type. Defaults to
+         * the timer type. {@link TimerReservoirType#OFF_HEAP_HISTOGRAM} keeps the heap small with high parameter
+         * cardinality.
+         */
+        public OptionsBuilder parameterReservoirType(final TimerReservoirType parameterReservoirType) {
+            this.parameterReservoirType = parameterReservoirType;
+            return this;
+        }
+
+        /**
+         * Remove timers of captured parameter values that have not been used for the given time. Timers are removed
+         * after being idle for between one and two timeouts, and get created afresh if the value is seen again.
+         * Invocations running longer than the timeout may lose their update. Disabled by default.
+         */
+        public OptionsBuilder parameterIdleTimeout(final long timeout, final TimeUnit unit) {
+            this.parameterIdleTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * Track the number of invocations in flight per function and per captured parameter value, in gauges named
+         * {@code <name>.inFlight}, together with the highest number seen since the last read in
+         * {@code <name>.maxInFlight}. See {@link InFlightGauge}.
+         */
+        public OptionsBuilder inFlightTracking(final boolean inFlightTracking) {
+            this.inFlightTracking = inFlightTracking;
+            return this;
+        }
+
+        /**
+         * Keep timed invocations that take at least the given time as {@link SlowCall}s, to be read with
+         * {@link FunctionMetricsManager#slowCalls()}. Invocations that are counted but not sampled are never
+         * captured. Disabled by default.
+         */
+        public OptionsBuilder slowCallThreshold(final long threshold, final TimeUnit unit) {
+            this.slowCallThresholdNanos = unit.toNanos(threshold);
+            return this;
+        }
+
+        /**
+         * Number of slowest calls kept per function. Default is 10.
+         */
+        public OptionsBuilder slowCallCapacity(final int slowCallCapacity) {
+            this.slowCallCapacity = slowCallCapacity;
+            return this;
+        }
+
+        /**
+         * Time for which a slow call is kept, unless slower calls push it out earlier. Default is one minute.
+         */
+        public OptionsBuilder slowCallWindow(final long window, final TimeUnit unit) {
+            this.slowCallWindowMillis = unit.toMillis(window);
+            return this;
+        }
+
+        /**
+         * Index the success, failure and all metrics of functions by class, method, domain and parameter string in
+         * {@link FunctionMetricsManager#taggedMetrics()}, for export to tag aware sinks. Metrics are still registered
+         * under their dotted names for other reporters.
+         */
+        public OptionsBuilder dimensionalMetrics(final boolean dimensionalMetrics) {
+            this.dimensionalMetrics = dimensionalMetrics;
+            return this;
+        }
+
+        /**
+         * Keep the success, failure and all metrics of functions in the tagged index only, without registering them
+         * by name, so that parameter values do not add registry entries. Only reporters reading the index, like
+         * {@link DeltaReporter} with tags enabled, see these metrics. Implies {@link #dimensionalMetrics(boolean)}.
+         */
+        public OptionsBuilder dimensionalOnly(final boolean dimensionalOnly) {
+            this.dimensionalOnly = dimensionalOnly;
+            return this;
+        }
+
+        /**
+         * Select how samples are written into timers. See {@link RecordingMode}.
+         */
+        public OptionsBuilder recordingMode(final RecordingMode recordingMode) {
+            this.recordingMode = recordingMode;
+            return this;
+        }
+
+        /**
+         * Number of samples a buffer holds before it is written into the timer in {@link RecordingMode#BUFFERED} mode.
+         */
+        public OptionsBuilder recordingBufferSize(final int recordingBufferSize) {
+            this.recordingBufferSize = recordingBufferSize;
+            return this;
+        }
+
+        /**
+         * How often buffers are written into timers in the background in {@link RecordingMode#BUFFERED} mode.
+         */
+        public OptionsBuilder recordingFlushInterval(final long interval, final TimeUnit unit) {
+            this.recordingFlushIntervalMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        /**
+         * Number of significant decimal digits kept by {@link TimerReservoirType#HDR_HISTOGRAM} reservoirs (1 to 5).
+         * Memory used per timer grows roughly tenfold with every additional digit. {@link #build()} rejects values
+         * above 5, so that timers are never created with an unsupported precision inside a monitored call.
+         */
+        public OptionsBuilder histogramPrecision(final int histogramPrecision) {
+            this.histogramPrecision = histogramPrecision;
+            return this;
+        }
+
+        /**
+         * Interval after which {@link TimerReservoirType#HDR_HISTOGRAM} reservoirs start counting afresh. The interval
+         * is kept in whole seconds, fractions of a second are rounded up.
+         */
+        public OptionsBuilder histogramInterval(final long interval, final TimeUnit unit) {
+            this.histogramIntervalSeconds = toSecondsRoundingUp(interval, unit);
+            return this;
+        }
+
+        /**
+         * Window length of {@link TimerReservoirType#SLIDING} reservoirs. The window is kept in whole seconds,
+         * fractions of a second are rounded up.
+         */
+        public OptionsBuilder slidingWindow(final long window, final TimeUnit unit) {
+            this.slidingWindowSeconds = toSecondsRoundingUp(window, unit);
+            return this;
+        }
+
+        /**
+         * Number of samples kept by {@link TimerReservoirType#DECAYING} reservoirs.
+         */
+        public OptionsBuilder decayingSize(final int decayingSize) {
+            this.decayingSize = decayingSize;
+            return this;
+        }
+
+        /**
+         * Decay factor of {@link TimerReservoirType#DECAYING} reservoirs. Higher values favour recent samples more.
+         */
+        public OptionsBuilder decayingAlpha(final double decayingAlpha) {
+            this.decayingAlpha = decayingAlpha;
+            return this;
+        }
+
+        /**
+         * Select which invocations are timed. See {@link SamplingMode}.
+         */
+        public OptionsBuilder samplingMode(final SamplingMode samplingMode) {
+            this.samplingMode = samplingMode;
+            return this;
+        }
+
+        /**
+         * Probability with which an invocation is timed in {@link SamplingMode#FIXED_RATE} mode (0 to 1).
+         */
+        public OptionsBuilder samplingRate(final double samplingRate) {
+            this.samplingRate = samplingRate;
+            return this;
+        }
+
+        /**
+         * Time one in every this many invocations in {@link SamplingMode#ONE_IN_N} mode.
+         */
+        public OptionsBuilder samplingInterval(final int samplingInterval) {
+            this.samplingInterval = samplingInterval;
+            return this;
+        }
+
+        /**
+         * Number of invocations per second to time in {@link SamplingMode#ADAPTIVE} mode.
+         */
+        public OptionsBuilder samplingTargetPerSecond(final int samplingTargetPerSecond) {
+            this.samplingTargetPerSecond = samplingTargetPerSecond;
+            return this;
+        }
+
+        /**
+         * Time functions returning a {@link java.util.concurrent.CompletionStage} or a
+         * {@link java.util.concurrent.Flow.Publisher} until the returned stage or stream completes, instead of until
+         * the function returns. The outcome is taken from the completion as well.
+         */
+        public OptionsBuilder asyncCompletionTiming(final boolean asyncCompletionTiming) {
+            this.asyncCompletionTiming = asyncCompletionTiming;
+            return this;
+        }
+
+        /**
+         * Count how often virtual threads pin their carrier thread while running a monitored function.
+         * See {@link PinningMonitor}. Requires Java 21 or later, and is ignored otherwise.
+         */
+        public OptionsBuilder pinningDetection(final boolean pinningDetection) {
+            this.pinningDetection = pinningDetection;
+            return this;
+        }
+
+        /**
+         * Minimum time a virtual thread has to stay pinned for {@link #pinningDetection(boolean)} to count it.
+         */
+        public OptionsBuilder pinningThreshold(final long threshold, final TimeUnit unit) {
+            this.pinningThresholdMillis = unit.toMillis(threshold);
+            return this;
+        }
+
+        /**
+         * Record failures additionally in a timer per exception type, named
+         * {@code <prefix>.<class>.<method>.failure.<ExceptionSimpleName>}.
+         */
+        public OptionsBuilder exceptionBreakdown(final boolean exceptionBreakdown) {
+            this.exceptionBreakdown = exceptionBreakdown;
+            return this;
+        }
+
+        /**
+         * Maximum number of exception classes tracked per method by {@link #exceptionBreakdown(boolean)}.
+         * Further classes are recorded under the exception overflow term.
+         */
+        public OptionsBuilder maxExceptionTypes(final int maxExceptionTypes) {
+            this.maxExceptionTypes = maxExceptionTypes;
+            return this;
+        }
+
+        /**
+         * Restrict {@link #exceptionBreakdown(boolean)} to these exception types. An exception is recorded under its
+         * nearest listed super class, or under the exception overflow term if none is listed.
+         * By default every exception class gets its own timer.
+         */
+        @SafeVarargs
+        public final OptionsBuilder exceptionTypes(final Class<? extends Throwable>... exceptionTypes) {
+            final List<Class<? extends Throwable>> types = new ArrayList<>(exceptionTypes.length);
+            for (Class<? extends Throwable> exceptionType : exceptionTypes) {
+                types.add(exceptionType);
+            }
+            this.exceptionTypes = Collections.unmodifiableList(types);
+            return this;
+        }
+
+        /**
+         * Metric term used for exceptions that are not broken down separately.
+         */
+        public OptionsBuilder exceptionOverflowTerm(final String exceptionOverflowTerm) {
+            this.exceptionOverflowTerm = exceptionOverflowTerm;
+            return this;
+        }
+
+        /**
+         * @return Whole seconds covering the duration, so that positive durations under a second do not end up as
+         * zero and fall back to the default
+         */
+        private static long toSecondsRoundingUp(final long duration, final TimeUnit unit) {
+            final long seconds = unit.toSeconds(duration);
+            return duration > 0 && unit.convert(seconds, TimeUnit.SECONDS) < duration ? seconds + 1 : seconds;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the histogram precision is above
+         * {@link HistogramBuckets#MAX_SIGNIFICANT_DIGITS}
+         */
         public Options build() {
+            if (histogramPrecision > HistogramBuckets.MAX_SIGNIFICANT_DIGITS) {
+                throw new IllegalArgumentException("Histogram precision must be between "
+                                                           + HistogramBuckets.MIN_SIGNIFICANT_DIGITS + " and "
+                                                           + HistogramBuckets.MAX_SIGNIFICANT_DIGITS + ", was "
+                                                           + histogramPrecision);
+            }
             Options options = new Options();
             if (caseFormatConverter != null) {
                 options.caseFormatConverter = caseFormatConverter;
@@ -85,6 +633,87 @@ public class Options {
             if (timerReservoirType != null) {
                 options.timerReservoirType = timerReservoirType;
             }
+            if (maxParameterCardinality > 0) {
+                options.maxParameterCardinality = maxParameterCardinality;
+            }
+            if (!Strings.isNullOrEmpty(parameterOverflowTerm)) {
+                options.parameterOverflowTerm = parameterOverflowTerm;
+            }
+            options.highPrecisionTiming = highPrecisionTiming;
+            options.asyncCompletionTiming = asyncCompletionTiming;
+            options.pinningDetection = pinningDetection;
+            if (pinningThresholdMillis > 0) {
+                options.pinningThresholdMillis = pinningThresholdMillis;
+            }
+            options.exceptionBreakdown = exceptionBreakdown;
+            if (maxExceptionTypes > 0) {
+                options.maxExceptionTypes = maxExceptionTypes;
+            }
+            if (exceptionTypes != null) {
+                options.exceptionTypes = exceptionTypes;
+            }
+            if (!Strings.isNullOrEmpty(exceptionOverflowTerm)) {
+                options.exceptionOverflowTerm = exceptionOverflowTerm;
+            }
+            if (clock != null) {
+                options.clock = clock;
+            }
+            if (metricKind != null) {
+                options.metricKind = metricKind;
+            }
+            options.derivedAllTimer = derivedAllTimer;
+            options.parameterReservoirType = parameterReservoirType;
+            options.inFlightTracking = inFlightTracking;
+            options.dimensionalMetrics = dimensionalMetrics;
+            options.dimensionalOnly = dimensionalOnly;
+            if (slowCallThresholdNanos > 0) {
+                options.slowCallThresholdNanos = slowCallThresholdNanos;
+            }
+            if (slowCallCapacity > 0) {
+                options.slowCallCapacity = slowCallCapacity;
+            }
+            if (slowCallWindowMillis > 0) {
+                options.slowCallWindowMillis = slowCallWindowMillis;
+            }
+            if (parameterIdleTimeoutMillis > 0) {
+                options.parameterIdleTimeoutMillis = parameterIdleTimeoutMillis;
+            }
+            if (recordingMode != null) {
+                options.recordingMode = recordingMode;
+            }
+            if (recordingBufferSize > 0) {
+                options.recordingBufferSize = recordingBufferSize;
+            }
+            if (recordingFlushIntervalMillis > 0) {
+                options.recordingFlushIntervalMillis = recordingFlushIntervalMillis;
+            }
+            if (histogramPrecision > 0) {
+                options.histogramPrecision = histogramPrecision;
+            }
+            if (histogramIntervalSeconds > 0) {
+                options.histogramIntervalSeconds = histogramIntervalSeconds;
+            }
+            if (slidingWindowSeconds > 0) {
+                options.slidingWindowSeconds = slidingWindowSeconds;
+            }
+            if (decayingSize > 0) {
+                options.decayingSize = decayingSize;
+            }
+            if (decayingAlpha > 0) {
+                options.decayingAlpha = decayingAlpha;
+            }
+            if (samplingMode != null) {
+                options.samplingMode = samplingMode;
+            }
+            if (samplingRate > 0 && samplingRate <= 1) {
+                options.samplingRate = samplingRate;
+            }
+            if (samplingInterval > 0) {
+                options.samplingInterval = samplingInterval;
+            }
+            if (samplingTargetPerSecond > 0) {
+                options.samplingTargetPerSecond = samplingTargetPerSecond;
+            }
             return options;
         }
     }
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import jdk.jfr.EventSettings;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Counts how often virtual threads pin their carrier thread while running a monitored function, to help find blocking
+ * code inside monitored functions. Pinning is detected through the {@code jdk.VirtualThreadPinned} JFR event, which
+ * is available from Java 21. Each event is attributed to the innermost monitored function on the stack of the pinned
+ * thread, and counted in a meter named {@code <prefix>.<class>.<method>.pinned}.
+ * Functions are registered by the instrumentation. Overloads share the meter of the first overload registered.
+ */
+public final class PinningMonitor {
+    static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private static final Logger log = LoggerFactory.getLogger(PinningMonitor.class.getName());
+    private static final String RECORDING_STREAM = "jdk.jfr.consumer.RecordingStream";
+    private static final Map<String, MethodData> monitoredMethods = new ConcurrentHashMap<>();
+    // Guarded by PinningMonitor.class
+    private static AutoCloseable stream;
+
+    private PinningMonitor() {}
+
+    /**
+     * Makes a monitored function known, so that pinning events on its frames can be attributed to it.
+     * @param declaringClassName Binary name of the class declaring the function
+     * @param methodName Name of the function as it appears in stack traces
+     * @param methodData Method data of the function
+     */
+    public static void register(String declaringClassName, String methodName, MethodData methodData) {
+        monitoredMethods.putIfAbsent(frameKey(declaringClassName, methodName), methodData);
+    }
+
+    /**
+     * Starts or stops listening for pinning events to match the options.
+     */
+    static synchronized void update(Options options) {
+        stop();
+        if (options.isPinningDetection()) {
+            start(Duration.ofMillis(options.getPinningThresholdMillis()));
+        }
+    }
+
+    /**
+     * Counts a pinning event against the innermost monitored function in the given frames.
+     * @param config Configuration to resolve meters with
+     * @param frameKeys Frames of the pinned thread from the innermost outwards, as built by {@link #frameKey}
+     * @return true if the event was attributed to a monitored function
+     */
+    static boolean recordPinned(ConfigSnapshot config, List<String> frameKeys) {
+        if (!config.isInitialized()) {
+            return false;
+        }
+        for (String frameKey : frameKeys) {
+            final MethodData methodData = monitoredMethods.get(frameKey);
+            if (methodData != null) {
+                config.getRegistry()
+                        .meter(config.getPrefix() + "." + methodData.getClassName() + "."
+                                       + methodData.getMethodName() + ".pinned")
+                        .mark();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String frameKey(String className, String methodName) {
+        return className + "#" + methodName;
+    }
+
+    // RecordingStream only exists from Java 14 onwards, while this library is built for Java 11
+    @SuppressWarnings("unchecked")
+    private static void start(Duration threshold) {
+        try {
+            final Class<?> streamClass = Class.forName(RECORDING_STREAM);
+            final Object recordingStream = streamClass.getConstructor().newInstance();
+            final EventSettings settings = (EventSettings) streamClass.getMethod("enable", String.class)
+                    .invoke(recordingStream, PINNED_EVENT);
+            settings.withThreshold(threshold).withStackTrace();
+            final Consumer<RecordedEvent> handler = PinningMonitor::onPinned;
+            streamClass.getMethod("onEvent", String.class, Consumer.class)
+                    .invoke(recordingStream, PINNED_EVENT, handler);
+            streamClass.getMethod("startAsync").invoke(recordingStream);
+            stream = (AutoCloseable) recordingStream;
+            log.info("Pinning detection started with threshold {}", threshold);
+        }
+        catch (ReflectiveOperationException | LinkageError e) {
+            log.warn("Pinning detection is not supported on this JVM: {}", e.toString());
+        }
+    }
+
+    private static void stop() {
+        if (stream == null) {
+            return;
+        }
+        try {
+            stream.close();
+        }
+        catch (Exception e) {
+            log.warn("Error stopping pinning detection: {}", e.toString());
+        }
+        stream = null;
+    }
+
+    private static void onPinned(RecordedEvent event) {
+        final RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace == null) {
+            return;
+        }
+        final List<String> frameKeys = new ArrayList<>(stackTrace.getFrames().size());
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            if (frame.isJavaFrame()) {
+                frameKeys.add(frameKey(frame.getMethod().getType().getName(), frame.getMethod().getName()));
+            }
+        }
+        recordPinned(FunctionMetricsManager.config(), frameKeys);
+    }
+}
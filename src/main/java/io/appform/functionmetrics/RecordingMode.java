@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.appform.functionmetrics;
+
+/**
+ * Controls how samples are written into timers.
+ */
+public enum RecordingMode {
+    /**
+     * Every sample is written straight into the timer's reservoir.
+     */
+    DIRECT,
+    /**
+     * Samples are collected in striped buffers and written into the timer's reservoir in batches, either when a
+     * buffer fills up, periodically in the background, or when the timer is read. This reduces contention on the
+     * reservoir when many threads record into the same timer, at the cost of samples reaching time based
+     * reservoirs a little late. See {@link BufferedTimer}.
+     */
+    BUFFERED,
+    /**
+     * Samples are written straight into the timer, and the recording path never takes a monitor or keeps per thread
+     * state, so that it neither pins the carrier of a virtual thread nor grows with the number of threads.
+     * {@link TimerReservoirType#SLIDING} reservoirs synchronize internally, so in this mode they are replaced by
+     * {@link TimerReservoirType#HDR_HISTOGRAM} reservoirs that reset every sliding window length.
+     */
+    VIRTUAL_THREADS
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.appform.functionmetrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reservoir settings for the timers of a single method, as overridden on {@link MonitoredFunction}.
+ * Unset values (null type, zero for numbers) fall back to the global {@link Options}.
+ */
+public class ReservoirConfig {
+    private static final Logger log = LoggerFactory.getLogger(ReservoirConfig.class.getName());
+    public static final ReservoirConfig DEFAULT = new ReservoirConfig(null, 0, 0, 0, 0);
+
+    private final TimerReservoirType timerReservoirType;
+    private final long slidingWindowSeconds;
+    private final int decayingSize;
+    private final double decayingAlpha;
+    private final int histogramPrecision;
+
+    public ReservoirConfig(TimerReservoirType timerReservoirType,
+                           long slidingWindowSeconds,
+                           int decayingSize,
+                           double decayingAlpha,
+                           int histogramPrecision) {
+        this.timerReservoirType = timerReservoirType;
+        this.slidingWindowSeconds = slidingWindowSeconds;
+        this.decayingSize = decayingSize;
+        this.decayingAlpha = decayingAlpha;
+        this.histogramPrecision = supportedPrecision(histogramPrecision);
+    }
+
+    /**
+     * Method level settings are read while a monitored call is in progress, so an unsupported precision is capped
+     * instead of failing the call.
+     */
+    private static int supportedPrecision(int histogramPrecision) {
+        if (histogramPrecision <= HistogramBuckets.MAX_SIGNIFICANT_DIGITS) {
+            return histogramPrecision;
+        }
+        log.warn("Histogram precision {} is not supported, using {}",
+                 histogramPrecision, HistogramBuckets.MAX_SIGNIFICANT_DIGITS);
+        return HistogramBuckets.MAX_SIGNIFICANT_DIGITS;
+    }
+
+    public static ReservoirConfig of(MonitoredFunction monitoredFunction) {
+        final TimerReservoirType[] types = monitoredFunction.timerReservoirType();
+        final ReservoirConfig config = new ReservoirConfig(types.length > 0 ? types[0] : null,
+                                                           monitoredFunction.slidingWindowSeconds(),
+                                                           monitoredFunction.decayingSize(),
+                                                           monitoredFunction.decayingAlpha(),
+                                                           monitoredFunction.histogramPrecision());
+        return config.isDefault() ? DEFAULT : config;
+    }
+
+    public TimerReservoirType getTimerReservoirType(Options options) {
+        return timerReservoirType != null ? timerReservoirType : options.getTimerType();
+    }
+
+    /**
+     * @return Reservoir type for parameterized timers of the method. A type set on the method applies to all its
+     * timers, otherwise {@link Options#getParameterReservoirType()} is used if set.
+     */
+    public TimerReservoirType getParameterReservoirType(Options options) {
+        if (timerReservoirType != null) {
+            return timerReservoirType;
+        }
+        return options.getParameterReservoirType() != null
+               ? options.getParameterReservoirType()
+               : options.getTimerType();
+    }
+
+    public long getSlidingWindowSeconds(Options options) {
+        return slidingWindowSeconds > 0 ? slidingWindowSeconds : options.getSlidingWindowSeconds();
+    }
+
+    public int getDecayingSize(Options options) {
+        return decayingSize > 0 ? decayingSize : options.getDecayingSize();
+    }
+
+    public double getDecayingAlpha(Options options) {
+        return decayingAlpha > 0 ? decayingAlpha : options.getDecayingAlpha();
+    }
+
+    public int getHistogramPrecision(Options options) {
+        return histogramPrecision > 0 ? histogramPrecision : options.getHistogramPrecision();
+    }
+
+    public boolean isDefault() {
+        return timerReservoirType == null
+                && slidingWindowSeconds <= 0
+                && decayingSize <= 0
+                && decayingAlpha <= 0
+                && histogramPrecision <= 0;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link Timer} that can also count invocations that were not timed because they were not sampled. Such invocations
+ * bump a striped counter, and are included in the count right away. They are folded into the meter when the timer is
+ * read, and by the first skipped invocation after every meter tick of five seconds. Rates therefore see unsampled
+ * invocations at most one tick late, even if nothing reads the timer, while the snapshot only reflects sampled
+ * durations.
+ */
+public class SampledTimer extends Timer {
+    // Interval at which Meter updates its moving averages
+    private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    private final Meter meter;
+    private final Clock clock;
+    private final LongAdder unsampled = new LongAdder();
+    private final AtomicLong marked = new AtomicLong();
+    private final AtomicLong lastFoldTick;
+
+    public SampledTimer(Reservoir reservoir, Clock clock) {
+        this(new Meter(clock), new Histogram(reservoir), clock);
+    }
+
+    private SampledTimer(Meter meter, Histogram histogram, Clock clock) {
+        super(meter, histogram, clock);
+        this.meter = meter;
+        this.clock = clock;
+        this.lastFoldTick = new AtomicLong(clock.getTick());
+    }
+
+    /**
+     * Counts an invocation that was not timed.
+     */
+    public void skip() {
+        unsampled.increment();
+        final long now = clock.getTick();
+        final long last = lastFoldTick.get();
+        if (now - last >= TICK_INTERVAL && lastFoldTick.compareAndSet(last, now)) {
+            markUnsampled();
+        }
+    }
+
+    /**
+     * @return Number of invocations counted through {@link #skip()}
+     */
+    public long getUnsampledCount() {
+        return unsampled.sum();
+    }
+
+    @Override
+    public long getCount() {
+        return super.getCount() + unsampled.sum();
+    }
+
+    @Override
+    public double getFifteenMinuteRate() {
+        markUnsampled();
+        return super.getFifteenMinuteRate();
+    }
+
+    @Override
+    public double getFiveMinuteRate() {
+        markUnsampled();
+        return super.getFiveMinuteRate();
+    }
+
+    @Override
+    public double getMeanRate() {
+        markUnsampled();
+        return super.getMeanRate();
+    }
+
+    @Override
+    public double getOneMinuteRate() {
+        markUnsampled();
+        return super.getOneMinuteRate();
+    }
+
+    private void markUnsampled() {
+        final long total = unsampled.sum();
+        final long previous = marked.get();
+        if (total > previous && marked.compareAndSet(previous, total)) {
+            meter.mark(total - previous);
+        }
+    }
+}
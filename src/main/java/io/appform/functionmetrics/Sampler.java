@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.Clock;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether an invocation is timed. See {@link SamplingMode}.
+ */
+public abstract class Sampler {
+    /**
+     * Times every invocation.
+     */
+    public static final Sampler ALWAYS = new Sampler() {
+        @Override
+        public boolean sample() {
+            return true;
+        }
+    };
+
+    /**
+     * @return true if the current invocation should be timed
+     */
+    public abstract boolean sample();
+
+    public static Sampler create(SamplingConfig samplingConfig, Options options) {
+        switch (samplingConfig.getSamplingMode(options)) {
+            case FIXED_RATE:
+                return new FixedRateSampler(samplingConfig.getSamplingRate(options));
+            case ONE_IN_N:
+                return new OneInNSampler(samplingConfig.getSamplingInterval(options));
+            case ADAPTIVE:
+                return new AdaptiveSampler(samplingConfig.getSamplingTargetPerSecond(options), options.getClock());
+            case NONE:
+            default:
+                return ALWAYS;
+        }
+    }
+
+    static final class FixedRateSampler extends Sampler {
+        private final double rate;
+
+        FixedRateSampler(double rate) {
+            this.rate = rate;
+        }
+
+        @Override
+        public boolean sample() {
+            return ThreadLocalRandom.current().nextDouble() < rate;
+        }
+    }
+
+    /**
+     * Counts invocations in a set of striped counters, picked by thread id, so that threads do not contend on a
+     * single counter. Every stripe times one in N of the invocations it sees.
+     */
+    static final class OneInNSampler extends Sampler {
+        // Keep each counter on its own cache line
+        private static final int PADDING = 16;
+
+        private final long interval;
+        private final AtomicLongArray counters;
+        private final int mask;
+
+        OneInNSampler(long interval) {
+            this.interval = interval;
+            final int processors = Runtime.getRuntime().availableProcessors();
+            final int stripeCount = Integer.highestOneBit(Math.max(1, processors - 1)) << 1;
+            this.counters = new AtomicLongArray(stripeCount * PADDING);
+            this.mask = stripeCount - 1;
+        }
+
+        @Override
+        public boolean sample() {
+            final int index = ((int) Thread.currentThread().getId() & mask) * PADDING;
+            return counters.getAndIncrement(index) % interval == 0;
+        }
+    }
+
+    /**
+     * Counts invocations and, about once a second, sets the sampling probability to the target rate divided by the
+     * observed call rate. The clock is only read on sampled invocations, which are timed anyway.
+     */
+    static final class AdaptiveSampler extends Sampler {
+        private static final long ADJUST_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+        private final double targetPerSecond;
+        private final Clock clock;
+        private final LongAdder calls = new LongAdder();
+        private final AtomicLong nextAdjustTick;
+        private volatile long windowStartTick;
+        private volatile double probability = 1.0;
+
+        AdaptiveSampler(double targetPerSecond, Clock clock) {
+            this.targetPerSecond = targetPerSecond;
+            this.clock = clock;
+            this.windowStartTick = clock.getTick();
+            this.nextAdjustTick = new AtomicLong(windowStartTick + ADJUST_INTERVAL_NANOS);
+        }
+
+        @Override
+        public boolean sample() {
+            calls.increment();
+            final double current = probability;
+            if (current < 1.0 && ThreadLocalRandom.current().nextDouble() >= current) {
+                return false;
+            }
+            final long now = clock.getTick();
+            final long next = nextAdjustTick.get();
+            if (now - next >= 0 && nextAdjustTick.compareAndSet(next, now + ADJUST_INTERVAL_NANOS)) {
+                adjust(now);
+            }
+            return true;
+        }
+
+        double getProbability() {
+            return probability;
+        }
+
+        private void adjust(long now) {
+            final long elapsedNanos = Math.max(1, now - windowStartTick);
+            windowStartTick = now;
+            final double callsPerSecond = calls.sumThenReset() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+            probability = callsPerSecond <= targetPerSecond ? 1.0 : targetPerSecond / callsPerSecond;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+/**
+ * Sampling settings for a single method, as overridden on {@link MonitoredFunction}.
+ * Unset values (null mode, zero for numbers) fall back to the global {@link Options}.
+ */
+public class SamplingConfig {
+    public static final SamplingConfig DEFAULT = new SamplingConfig(null, 0, 0, 0);
+
+    private final SamplingMode samplingMode;
+    private final double samplingRate;
+    private final int samplingInterval;
+    private final int samplingTargetPerSecond;
+
+    public SamplingConfig(SamplingMode samplingMode,
+                          double samplingRate,
+                          int samplingInterval,
+                          int samplingTargetPerSecond) {
+        this.samplingMode = samplingMode;
+        this.samplingRate = samplingRate;
+        this.samplingInterval = samplingInterval;
+        this.samplingTargetPerSecond = samplingTargetPerSecond;
+    }
+
+    public static SamplingConfig of(MonitoredFunction monitoredFunction) {
+        final SamplingMode[] modes = monitoredFunction.sampling();
+        final SamplingConfig config = new SamplingConfig(modes.length > 0 ? modes[0] : null,
+                                                         monitoredFunction.samplingRate(),
+                                                         monitoredFunction.samplingInterval(),
+                                                         monitoredFunction.samplingTargetPerSecond());
+        return config.isDefault() ? DEFAULT : config;
+    }
+
+    public SamplingMode getSamplingMode(Options options) {
+        return samplingMode != null ? samplingMode : options.getSamplingMode();
+    }
+
+    public double getSamplingRate(Options options) {
+        return samplingRate > 0 && samplingRate <= 1 ? samplingRate : options.getSamplingRate();
+    }
+
+    public int getSamplingInterval(Options options) {
+        return samplingInterval > 0 ? samplingInterval : options.getSamplingInterval();
+    }
+
+    public int getSamplingTargetPerSecond(Options options) {
+        return samplingTargetPerSecond > 0 ? samplingTargetPerSecond : options.getSamplingTargetPerSecond();
+    }
+
+    public boolean isDefault() {
+        return samplingMode == null
+                && samplingRate <= 0
+                && samplingInterval <= 0
+                && samplingTargetPerSecond <= 0;
+    }
+}
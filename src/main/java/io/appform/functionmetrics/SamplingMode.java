@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+/**
+ * Controls which invocations of a monitored function are timed. Invocations that are not sampled are still counted,
+ * so call counts and rates stay exact while latency distributions are built from the sampled invocations only.
+ */
+public enum SamplingMode {
+    /**
+     * Every invocation is timed.
+     */
+    NONE,
+    /**
+     * Each invocation is timed with a fixed probability. See {@link Options#getSamplingRate()}.
+     */
+    FIXED_RATE,
+    /**
+     * One in every N invocations is timed, using striped counters. See {@link Options#getSamplingInterval()}.
+     */
+    ONE_IN_N,
+    /**
+     * The sampling probability is adjusted every second so that roughly a fixed number of invocations are timed per
+     * second, however hot the function is. Functions called less often than that are always timed.
+     * See {@link Options#getSamplingTargetPerSecond()}.
+     */
+    ADAPTIVE
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single invocation of a monitored function that took longer than {@link Options#getSlowCallThresholdNanos()}.
+ */
+public final class SlowCall {
+    private final String className;
+    private final String methodName;
+    private final String parameterString;
+    private final long durationNanos;
+    private final long timestampMillis;
+    private final String threadName;
+    private final String exceptionType;
+
+    public SlowCall(String className,
+                    String methodName,
+                    String parameterString,
+                    long durationNanos,
+                    long timestampMillis,
+                    String threadName,
+                    String exceptionType) {
+        this.className = className;
+        this.methodName = methodName;
+        this.parameterString = parameterString;
+        this.durationNanos = durationNanos;
+        this.timestampMillis = timestampMillis;
+        this.threadName = threadName;
+        this.exceptionType = exceptionType;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    /**
+     * @return Parameter string built from the {@link MetricTerm} values of the call, null if parameters are not
+     * captured for it
+     */
+    public String getParameterString() {
+        return parameterString;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return Wall clock time the call completed at
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * @return Name of the thread the call completed on
+     */
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * @return Class name of the exception the call failed with, null if it succeeded
+     */
+    public String getExceptionType() {
+        return exceptionType;
+    }
+
+    @Override
+    public String toString() {
+        return className + "." + methodName
+                + (parameterString != null ? "[" + parameterString + "]" : "")
+                + " took " + TimeUnit.NANOSECONDS.toMillis(durationNanos) + "ms"
+                + " at " + timestampMillis
+                + " on " + threadName
+                + (exceptionType != null ? " failing with " + exceptionType : "");
+    }
+}
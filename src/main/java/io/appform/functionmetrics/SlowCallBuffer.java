@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the slowest calls of a function within a sliding window in a fixed number of slots. A call takes a free slot,
+ * a slot holding a call that has left the window, or the slot of the fastest call kept if it is slower. Slots are
+ * replaced with a compare and set, so recording never blocks.
+ */
+final class SlowCallBuffer {
+    private final AtomicReferenceArray<SlowCall> slots;
+    private final long windowMillis;
+
+    SlowCallBuffer(int capacity, long windowMillis) {
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.windowMillis = windowMillis;
+    }
+
+    void offer(SlowCall call) {
+        final long oldest = call.getTimestampMillis() - windowMillis;
+        // Bounded, every failed attempt means another call took a slot in the meantime
+        for (int attempt = 0; attempt < slots.length(); attempt++) {
+            int victim = -1;
+            SlowCall expected = null;
+            long victimDuration = Long.MAX_VALUE;
+            for (int i = 0; i < slots.length(); i++) {
+                final SlowCall existing = slots.get(i);
+                if (existing == null || existing.getTimestampMillis() < oldest) {
+                    victim = i;
+                    expected = existing;
+                    victimDuration = Long.MIN_VALUE;
+                    break;
+                }
+                if (existing.getDurationNanos() < victimDuration) {
+                    victim = i;
+                    expected = existing;
+                    victimDuration = existing.getDurationNanos();
+                }
+            }
+            if (victimDuration >= call.getDurationNanos()) {
+                return;
+            }
+            if (slots.compareAndSet(victim, expected, call)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return Calls within the window, slowest first
+     */
+    List<SlowCall> snapshot(long nowMillis) {
+        final long oldest = nowMillis - windowMillis;
+        final List<SlowCall> calls = new ArrayList<>(slots.length());
+        for (int i = 0; i < slots.length(); i++) {
+            final SlowCall call = slots.get(i);
+            if (call != null && call.getTimestampMillis() >= oldest) {
+                calls.add(call);
+            }
+        }
+        calls.sort(Comparator.comparingLong(SlowCall::getDurationNanos).reversed());
+        return calls;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.Metered;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Index of the metrics {@link FunctionMetricsManager} keeps in dimensional mode. Tag sets are interned and given
+ * integer ids, and metrics are stored in an array indexed by id, so reads neither hash nor compare strings. Ids of
+ * removed metrics are reused. Writes are serialized, and only happen when a metric is created or removed.
+ */
+public final class TaggedMetrics {
+    private final Map<MetricTags, MetricTags> interned = new HashMap<>();
+    private final Map<String, MetricTags> byName = new HashMap<>();
+    private final Deque<Integer> freeIds = new ArrayDeque<>();
+    private volatile MetricTags[] tags = new MetricTags[64];
+    private volatile Metered[] metrics = new Metered[64];
+    private int nextId;
+
+    TaggedMetrics() {}
+
+    /**
+     * @return Metric with the given id, null if there is none
+     */
+    public Metered get(int id) {
+        final Metered[] current = metrics;
+        return id >= 0 && id < current.length ? current[id] : null;
+    }
+
+    /**
+     * @return Metric with the given tags, null if there is none
+     */
+    public Metered get(MetricTags key) {
+        if (key.getId() < 0) {
+            final MetricTags resolved = find(key);
+            return resolved != null ? get(resolved) : null;
+        }
+        final int id = key.getId();
+        // Ids are reused, so only the interned instance owning the slot resolves it
+        if (!owns(key)) {
+            return null;
+        }
+        final Metered metric = get(id);
+        // The slot may have been freed and given to another tag set while the metric was read
+        return owns(key) ? metric : null;
+    }
+
+    private boolean owns(MetricTags key) {
+        final MetricTags[] currentTags = tags;
+        return key.getId() < currentTags.length && currentTags[key.getId()] == key;
+    }
+
+    /**
+     * @return true if the metric with the given registry name is kept in this index
+     */
+    public synchronized boolean contains(String name) {
+        return byName.containsKey(name);
+    }
+
+    /**
+     * Calls the consumer for every metric in the index, in id order.
+     */
+    public void forEach(BiConsumer<MetricTags, Metered> consumer) {
+        final MetricTags[] currentTags;
+        final Metered[] currentMetrics;
+        synchronized (this) {
+            currentTags = tags;
+            currentMetrics = metrics;
+        }
+        for (int id = 0; id < currentTags.length; id++) {
+            final MetricTags entry = currentTags[id];
+            final Metered metric = currentMetrics[id];
+            if (entry != null && metric != null) {
+                consumer.accept(entry, metric);
+            }
+        }
+    }
+
+    /**
+     * @return Metric with the given tags, created with the factory if there is none
+     */
+    synchronized Metered computeIfAbsent(MetricTags key, Supplier<? extends Metered> factory) {
+        final MetricTags existing = interned.get(key);
+        if (existing != null) {
+            return metrics[existing.getId()];
+        }
+        final Metered metric = factory.get();
+        put(key, metric);
+        return metric;
+    }
+
+    /**
+     * Adds a metric to the index, replacing the metric with the same tags if any.
+     */
+    synchronized void put(MetricTags key, Metered metric) {
+        MetricTags entry = interned.get(key);
+        if (entry == null) {
+            entry = key.withId(allocateId());
+            interned.put(entry, entry);
+            byName.put(entry.getName(), entry);
+            tags[entry.getId()] = entry;
+        }
+        metrics[entry.getId()] = metric;
+        publish();
+    }
+
+    /**
+     * @return true if a metric with the given registry name was removed
+     */
+    synchronized boolean remove(String name) {
+        final MetricTags entry = byName.remove(name);
+        if (entry == null) {
+            return false;
+        }
+        interned.remove(entry);
+        tags[entry.getId()] = null;
+        metrics[entry.getId()] = null;
+        freeIds.push(entry.getId());
+        publish();
+        return true;
+    }
+
+    synchronized void clear() {
+        interned.clear();
+        byName.clear();
+        freeIds.clear();
+        tags = new MetricTags[tags.length];
+        metrics = new Metered[metrics.length];
+        nextId = 0;
+    }
+
+    private synchronized MetricTags find(MetricTags key) {
+        return interned.get(key);
+    }
+
+    // Called with the lock held. Writes the array fields again, so that lock-free readers see the updated elements
+    private void publish() {
+        tags = tags;
+        metrics = metrics;
+    }
+
+    // Called with the lock held
+    private int allocateId() {
+        if (!freeIds.isEmpty()) {
+            return freeIds.pop();
+        }
+        final int id = nextId++;
+        if (id == metrics.length) {
+            tags = Arrays.copyOf(tags, id * 2);
+            metrics = Arrays.copyOf(metrics, id * 2);
+        }
+        return id;
+    }
+}
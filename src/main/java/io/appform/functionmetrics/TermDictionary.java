@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import static io.appform.functionmetrics.FunctionMetricConstants.isValidParamValue;
+
+import com.google.common.base.Converter;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Remembers the metric term each captured parameter value converts to, so that a value is validated and passed
+ * through the case format converter once, and the same string instance is reused by every metric name built from it.
+ * All constants of an enum are converted together and looked up by ordinal. Enum types of metric terms are converted
+ * when the method data declaring them is created, other enums, such as ones returned by a {@link TermExtractor}, the
+ * first time any of their constants is seen.
+ * Integral numbers and booleans are used as is. Arguments reach the dictionary boxed, so numbers are unboxed once and
+ * looked up by their long value: terms of small numbers are built up front, larger numbers are kept in a map keyed by
+ * that value. Holds at most {@link #MAX_SIZE} strings and numbers each. Strings seen after that are remembered in a
+ * small table of recent values, and converted again once pushed out of it.
+ */
+final class TermDictionary {
+    static final int MAX_SIZE = 10_000;
+
+    private static final int MIN_PREBUILT = -128;
+    private static final int MAX_PREBUILT = 1023;
+    private static final String[] PREBUILT = new String[MAX_PREBUILT - MIN_PREBUILT + 1];
+    private static final int RECENT_SIZE = 256;
+
+    static {
+        for (int i = 0; i < PREBUILT.length; i++) {
+            PREBUILT[i] = Integer.toString(i + MIN_PREBUILT);
+        }
+    }
+
+    private final Converter<String, String> caseFormatConverter;
+    private final Map<String, String> terms = new ConcurrentHashMap<>();
+    private final Map<Class<?>, String[]> enumTerms = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<RecentTerm> recentTerms = new AtomicReferenceArray<>(RECENT_SIZE);
+    private final LongTerms numericTerms = new LongTerms();
+
+    TermDictionary(Converter<String, String> caseFormatConverter) {
+        this.caseFormatConverter = caseFormatConverter;
+    }
+
+    /**
+     * @param value Raw parameter value
+     * @return Term for the value, or an empty string if the value cannot be part of a metric name
+     */
+    String term(Object value) {
+        if (value == null) {
+            return "";
+        }
+        if (value instanceof Boolean) {
+            return ((Boolean) value) ? "true" : "false";
+        }
+        if (isIntegral(value)) {
+            return term(((Number) value).longValue());
+        }
+        if (value instanceof Enum) {
+            return term((Enum<?>) value);
+        }
+        return value instanceof String ? term((String) value) : "";
+    }
+
+    private String term(String value) {
+        final String known = terms.get(value);
+        if (known != null) {
+            return known;
+        }
+        if (terms.size() < MAX_SIZE) {
+            final String term = convert(value);
+            final String existing = terms.putIfAbsent(value, term);
+            return existing != null ? existing : term;
+        }
+        final int slot = value.hashCode() & (RECENT_SIZE - 1);
+        final RecentTerm recent = recentTerms.get(slot);
+        if (recent != null && recent.value.equals(value)) {
+            return recent.term;
+        }
+        final String term = convert(value);
+        recentTerms.set(slot, new RecentTerm(value, term));
+        return term;
+    }
+
+    private String term(Enum<?> value) {
+        final Class<?> type = value.getDeclaringClass();
+        String[] constants = enumTerms.get(type);
+        if (constants == null) {
+            constants = enumTerms.computeIfAbsent(type, this::convertConstants);
+        }
+        return constants[value.ordinal()];
+    }
+
+    /**
+     * Converts all constants of the given enum types, so that calls passing them only look up their terms. Types
+     * already converted and types that are not enums are skipped.
+     */
+    void convertEnums(Collection<Class<?>> types) {
+        for (Class<?> type : types) {
+            if (type.isEnum()) {
+                enumTerms.computeIfAbsent(type, this::convertConstants);
+            }
+        }
+    }
+
+    /**
+     * @return Term for an integral number
+     */
+    String term(long value) {
+        if (value >= MIN_PREBUILT && value <= MAX_PREBUILT) {
+            return PREBUILT[(int) (value - MIN_PREBUILT)];
+        }
+        final String known = numericTerms.get(value);
+        return known != null ? known : numericTerms.putIfAbsent(value, Long.toString(value));
+    }
+
+    /**
+     * @return true if the value can be used as a term without an extractor
+     */
+    static boolean isTermType(Object value) {
+        return value instanceof String || value instanceof Enum || value instanceof Boolean || isIntegral(value);
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+    }
+
+    private String[] convertConstants(Class<?> type) {
+        final Object[] constants = type.getEnumConstants();
+        final String[] converted = new String[constants.length];
+        for (int i = 0; i < constants.length; i++) {
+            converted[i] = convert(((Enum<?>) constants[i]).name());
+        }
+        return converted;
+    }
+
+    private String convert(String value) {
+        final String trimmed = value.trim();
+        return isValidParamValue(trimmed) ? caseFormatConverter.convert(trimmed) : "";
+    }
+
+    private static final class RecentTerm {
+        private final String value;
+        private final String term;
+
+        private RecentTerm(String value, String term) {
+            this.value = value;
+            this.term = term;
+        }
+    }
+
+    /**
+     * Open addressing map from numbers outside the prebuilt range to their terms. Reads are lock free. A value is
+     * published before its key, so a reader that finds the key also finds the value. A reader still using a table that
+     * has been replaced by a larger one may miss a key, and then takes the locked path.
+     */
+    private static final class LongTerms {
+        // Zero is prebuilt, so it never is a key here
+        private static final long EMPTY = 0L;
+
+        private volatile Table table = new Table(64);
+        private int size;
+
+        String get(long key) {
+            return table.get(key);
+        }
+
+        synchronized String putIfAbsent(long key, String term) {
+            final String existing = table.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            if (size >= MAX_SIZE) {
+                return term;
+            }
+            if ((size + 1) * 2 > table.keys.length()) {
+                final Table resized = new Table(table.keys.length() * 2);
+                table.copyTo(resized);
+                table = resized;
+            }
+            table.put(key, term);
+            size++;
+            return term;
+        }
+
+        private static final class Table {
+            private final AtomicLongArray keys;
+            private final AtomicReferenceArray<String> values;
+
+            private Table(int capacity) {
+                this.keys = new AtomicLongArray(capacity);
+                this.values = new AtomicReferenceArray<>(capacity);
+            }
+
+            private String get(long key) {
+                final int mask = keys.length() - 1;
+                for (int i = index(key, mask); ; i = (i + 1) & mask) {
+                    final long current = keys.get(i);
+                    if (current == key) {
+                        return values.get(i);
+                    }
+                    if (current == EMPTY) {
+                        return null;
+                    }
+                }
+            }
+
+            private void put(long key, String term) {
+                final int mask = keys.length() - 1;
+                int i = index(key, mask);
+                while (keys.get(i) != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                values.set(i, term);
+                keys.set(i, key);
+            }
+
+            private void copyTo(Table other) {
+                for (int i = 0; i < keys.length(); i++) {
+                    final long key = keys.get(i);
+                    if (key != EMPTY) {
+                        other.put(key, values.get(i));
+                    }
+                }
+            }
+
+            private static int index(long key, int mask) {
+                final long mixed = key * 0x9E3779B97F4A7C15L;
+                return (int) (mixed ^ (mixed >>> 32)) & mask;
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+/**
+ * Derives the value used as {@link MetricTerm} from a parameter, for example a field of a request object. Set it with
+ * {@link MetricTerm#extractor()}. Implementations need a public no-argument constructor and must be thread safe.
+ * @param <T> Type of the annotated parameter
+ */
+@FunctionalInterface
+public interface TermExtractor<T> {
+
+    /**
+     * @param value Value of the annotated parameter, never null
+     * @return Term value, a {@link String}, {@link Enum}, integral number or {@link Boolean}. Any other value,
+     * including null, means the invocation is recorded without parameterized metrics.
+     */
+    Object extract(T value);
+
+    /**
+     * Marker for terms that use the parameter value as is.
+     */
+    final class None implements TermExtractor<Object> {
+        private None() {}
+
+        @Override
+        public Object extract(Object value) {
+            return value;
+        }
+    }
+}
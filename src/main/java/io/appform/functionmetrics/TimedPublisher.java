@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import java.lang.ref.Cleaner;
+import java.util.concurrent.Flow;
+
+/**
+ * Wraps a {@link Flow.Publisher} returned by a monitored function, so that the invocation is recorded when a
+ * subscription terminates. Completion is recorded as success, an error as failure, and cancellation as success.
+ * Only the first subscription to terminate is recorded.
+ * A publisher that is garbage collected before any subscription terminated, for example because it was never
+ * subscribed to, is recorded as abandoned once it and all its subscribers are unreachable, see
+ * {@link AsyncCompletion#abandon()}.
+ */
+final class TimedPublisher<T> implements Flow.Publisher<T> {
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final Flow.Publisher<T> delegate;
+    private final AsyncCompletion completion;
+    private final Cleaner.Cleanable cleanable;
+
+    TimedPublisher(Flow.Publisher<T> delegate, AsyncCompletion completion) {
+        this.delegate = delegate;
+        this.completion = completion;
+        // The action must not reference this publisher, or it would never become unreachable
+        this.cleanable = CLEANER.register(this, completion::abandon);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        delegate.subscribe(new TimedSubscriber<>(subscriber, this));
+    }
+
+    private void complete(TimerDomain outcome, Throwable error) {
+        completion.complete(outcome, error);
+        // Already recorded, so this only drops the registration
+        cleanable.clean();
+    }
+
+    /**
+     * Doubles as the subscription handed downstream, to intercept cancellation without another allocation. Keeps
+     * the publisher reachable while the subscription is active, so that it is not recorded as abandoned.
+     */
+    private static final class TimedSubscriber<T> implements Flow.Subscriber<T>, Flow.Subscription {
+        private final Flow.Subscriber<? super T> downstream;
+        private final TimedPublisher<?> publisher;
+        private Flow.Subscription subscription;
+
+        private TimedSubscriber(Flow.Subscriber<? super T> downstream, TimedPublisher<?> publisher) {
+            this.downstream = downstream;
+            this.publisher = publisher;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            downstream.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(T item) {
+            downstream.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            publisher.complete(TimerDomain.FAILURE, throwable);
+            downstream.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            publisher.complete(TimerDomain.SUCCESS, null);
+            downstream.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            subscription.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            publisher.complete(TimerDomain.SUCCESS, null);
+            subscription.cancel();
+        }
+    }
+}
@@ -2,14 +2,23 @@ package io.appform.functionmetrics;
 
 /**
  * A {@link com.codahale.metrics.Timer} uses a {@link com.codahale.metrics.Reservoir} to store its state.
- * Reservoirs can be of two types - decaying and sliding.
+ * Reservoirs can be of three types - decaying, sliding and hdr histogram.
  * Sliding window reservoirs provide accurate statistics and work very well in practice.
  * Decaying reservoirs use an exponential function to assign more weight to recent samples.
  * In some performance sensitive workloads that involve highly concurrent updates to the timer,
  * it is preferable to use a decaying reservoir to avoid the extra synchronization and memory overheads
  * that a sliding window reservoir incurs.
+* Sliding window reservoirs store every sample in the window, so their memory use grows with the call rate.
+* Hdr histogram reservoirs count samples in a fixed set of buckets instead, which keeps memory use bounded regardless
+* of throughput, with accuracy controlled by {@link Options#getHistogramPrecision()}.
   */
 public enum TimerReservoirType {
     DECAYING,
-    SLIDING
+    SLIDING,
+    HDR_HISTOGRAM,
+    /**
+     * Same bucket layout as {@link #HDR_HISTOGRAM}, with counts kept in direct memory outside the heap. Suited for
+     * large numbers of parameterized timers. See {@link OffHeapHistogramReservoir}.
+     */
+    OFF_HEAP_HISTOGRAM
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.appform.functionmetrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds on to {@link MethodTimers} for a metric name and re-resolves them once they go stale. Handles of captured
+ * parameter values note the {@link IdleTimerEvictor} epoch they were last used in.
+ */
+class TimersHandle {
+    private final MethodData methodData;
+    private final String parameterString;
+    private final boolean tracked;
+    private final AtomicInteger aliases = new AtomicInteger();
+    private volatile MethodTimers timers;
+    private volatile int lastUsedEpoch = IdleTimerEvictor.epoch();
+
+    TimersHandle(MethodData methodData, String parameterString) {
+        this.methodData = methodData;
+        this.parameterString = parameterString;
+        this.tracked = parameterString != null;
+    }
+
+    /**
+     * @return Current timer handles, or null if there is nothing to record into
+     */
+    MethodTimers get() {
+        if (tracked) {
+            final int epoch = IdleTimerEvictor.epoch();
+            if (lastUsedEpoch != epoch) {
+                lastUsedEpoch = epoch;
+            }
+        }
+        MethodTimers current = timers;
+        if (current == null || !current.isCurrent()) {
+            current = FunctionMetricsManager.methodTimers(methodData, parameterString);
+            timers = current;
+        }
+        return current;
+    }
+
+    /**
+     * Counts a raw captured value that maps to this handle.
+     * @return true if the value may be cached, false if the handle already has the given number of raw values
+     */
+    boolean addAlias(int maxAliases) {
+        return aliases.incrementAndGet() <= maxAliases;
+    }
+
+    String getParameterString() {
+        return parameterString;
+    }
+
+    /**
+     * @return true if this handle has not been used in or after the given epoch
+     */
+    boolean isIdleSince(int epoch) {
+        return lastUsedEpoch < epoch;
+    }
+}
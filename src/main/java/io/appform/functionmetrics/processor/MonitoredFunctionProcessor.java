@@ -0,0 +1,496 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.appform.functionmetrics.processor;
+
+import io.appform.functionmetrics.HistogramBuckets;
+import io.appform.functionmetrics.MetricKind;
+import io.appform.functionmetrics.MetricTerm;
+import io.appform.functionmetrics.MonitoredFunction;
+import io.appform.functionmetrics.ReservoirConfig;
+import io.appform.functionmetrics.SamplingConfig;
+import io.appform.functionmetrics.SamplingMode;
+import io.appform.functionmetrics.TermExtractor;
+import io.appform.functionmetrics.TimerReservoirType;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.MirroredTypeException;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Flow;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * An alternative to weaving {@link io.appform.functionmetrics.FunctionTimerAspect} into the code. For every class
+ * that has methods annotated with {@link MonitoredFunction}, this generates a subclass named
+ * {@code <SimpleName>Monitored} in the same package, that overrides the annotated methods with inline timing code.
+ * Timers are held in static final fields of the generated class and recorded through
+ * {@link io.appform.functionmetrics.InvocationRecorder}, so metric names and {@link io.appform.functionmetrics.Options}
+ * behave exactly as they do with the aspect.
+ *
+ * This processor is not registered as a service, add it to the annotation processors of the compiler plugin for the
+ * modules that should use it and instantiate the generated classes instead of the annotated ones. Do not weave the
+ * aspect into the same classes, otherwise calls will be recorded twice.
+ *
+ * Methods that cannot be overridden (private, static or final) and classes that cannot be extended are skipped with
+ * a warning.
+ */
+@SupportedAnnotationTypes("io.appform.functionmetrics.MonitoredFunction")
+public class MonitoredFunctionProcessor extends AbstractProcessor {
+    static final String GENERATED_CLASS_SUFFIX = "Monitored";
+
+    private static final String RECORDER = "io.appform.functionmetrics.InvocationRecorder";
+    private static final String METHOD_DATA = "io.appform.functionmetrics.MethodData";
+    private static final String CONFIG_SNAPSHOT = "io.appform.functionmetrics.ConfigSnapshot";
+    private static final String PINNING_MONITOR = "io.appform.functionmetrics.PinningMonitor";
+    private static final String RESERVOIR_CONFIG = "io.appform.functionmetrics.ReservoirConfig";
+    private static final String SAMPLING_CONFIG = "io.appform.functionmetrics.SamplingConfig";
+    private static final String METHOD_TIMERS = "io.appform.functionmetrics.MethodTimers";
+    private static final String TERM_EXTRACTOR = "io.appform.functionmetrics.TermExtractor";
+
+    private Filer filer;
+    private Messager messager;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        this.filer = processingEnv.getFiler();
+        this.messager = processingEnv.getMessager();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        final Map<TypeElement, List<ExecutableElement>> methodsByType = new LinkedHashMap<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(MonitoredFunction.class)) {
+            if (element.getKind() != ElementKind.METHOD) {
+                continue;
+            }
+            final ExecutableElement method = (ExecutableElement) element;
+            if (method.getModifiers().contains(Modifier.PRIVATE)
+                    || method.getModifiers().contains(Modifier.STATIC)
+                    || method.getModifiers().contains(Modifier.FINAL)) {
+                messager.printMessage(Diagnostic.Kind.WARNING,
+                                      "Private, static or final methods cannot be wrapped, method will not be monitored",
+                                      method);
+                continue;
+            }
+            if (method.getAnnotation(MonitoredFunction.class).histogramPrecision()
+                    > HistogramBuckets.MAX_SIGNIFICANT_DIGITS) {
+                messager.printMessage(Diagnostic.Kind.ERROR,
+                                      "Histogram precision must be between " + HistogramBuckets.MIN_SIGNIFICANT_DIGITS
+                                              + " and " + HistogramBuckets.MAX_SIGNIFICANT_DIGITS,
+                                      method);
+                continue;
+            }
+            methodsByType.computeIfAbsent((TypeElement) method.getEnclosingElement(), type -> new ArrayList<>())
+                    .add(method);
+        }
+        methodsByType.forEach((type, methods) -> {
+            if (isExtensible(type)) {
+                generate(type, methods);
+            }
+        });
+        return false;
+    }
+
+    private boolean isExtensible(TypeElement type) {
+        final boolean extensible = type.getKind() == ElementKind.CLASS
+                && !type.getModifiers().contains(Modifier.FINAL)
+                && !type.getModifiers().contains(Modifier.PRIVATE)
+                && (type.getNestingKind() == NestingKind.TOP_LEVEL
+                    || (type.getNestingKind() == NestingKind.MEMBER && type.getModifiers().contains(Modifier.STATIC)))
+                && ElementFilter.constructorsIn(type.getEnclosedElements())
+                        .stream()
+                        .anyMatch(constructor -> !constructor.getModifiers().contains(Modifier.PRIVATE));
+        if (!extensible) {
+            messager.printMessage(Diagnostic.Kind.WARNING,
+                                  "Class cannot be extended, monitored methods in it will not be wrapped",
+                                  type);
+        }
+        return extensible;
+    }
+
+    private void generate(TypeElement type, List<ExecutableElement> methods) {
+        final String packageName = packageOf(type).getQualifiedName().toString();
+        final String generatedName = generatedSimpleName(type);
+        final StringBuilder src = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            src.append("package ").append(packageName).append(";\n\n");
+        }
+        src.append("/**\n * Generated by ").append(MonitoredFunctionProcessor.class.getName())
+                .append(". Do not edit.\n */\n");
+        src.append("public ");
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            src.append("abstract ");
+        }
+        src.append("class ").append(generatedName).append(typeParameters(type.getTypeParameters()).trim())
+                .append(" extends ").append(type.getQualifiedName()).append(typeArguments(type.getTypeParameters()))
+                .append(" {\n");
+        for (int i = 0; i < methods.size(); i++) {
+            appendMethodData(src, type, methods.get(i), i);
+        }
+        appendPinningRegistration(src, type, methods);
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (!constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                appendConstructor(src, generatedName, constructor);
+            }
+        }
+        for (int i = 0; i < methods.size(); i++) {
+            appendMethod(src, methods.get(i), i);
+        }
+        src.setLength(src.length() - 1);
+        src.append("}\n");
+        final String qualifiedName = packageName.isEmpty() ? generatedName : packageName + "." + generatedName;
+        try (Writer writer = filer.createSourceFile(qualifiedName, type).openWriter()) {
+            writer.write(src.toString());
+        }
+        catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Could not generate " + qualifiedName + ": " + e, type);
+        }
+    }
+
+    private void appendMethodData(StringBuilder src, TypeElement type, ExecutableElement method, int index) {
+        final MonitoredFunction monitoredFunction = method.getAnnotation(MonitoredFunction.class);
+        final String className = monitoredFunction.className().isEmpty()
+                                 ? type.getSimpleName().toString()
+                                 : monitoredFunction.className();
+        final String methodName = monitoredFunction.method().isEmpty()
+                                  ? method.getSimpleName().toString()
+                                  : monitoredFunction.method();
+        final List<Integer> positions = metricTermPositions(method);
+        src.append("    private static final ").append(METHOD_DATA).append(' ').append(methodDataField(index))
+                .append("\n            = new ").append(METHOD_DATA).append('(')
+                .append(stringLiteral(className)).append(", ")
+                .append(stringLiteral(methodName)).append(", ")
+                .append(positions.isEmpty()
+                        ? "java.util.Collections.emptyList()"
+                        : positions.stream()
+                                .map(String::valueOf)
+                                .collect(Collectors.joining(", ", "java.util.Arrays.asList(", ")")));
+        final ReservoirConfig reservoirConfig = ReservoirConfig.of(monitoredFunction);
+        final SamplingConfig samplingConfig = SamplingConfig.of(monitoredFunction);
+        final MetricKind metricKind = MetricKind.of(monitoredFunction);
+        final List<String> extractors = termExtractors(method, positions);
+        final boolean hasExtractors = extractors.stream().anyMatch(Objects::nonNull);
+        final List<String> enumTypes = enumTermTypes(method, positions, extractors);
+        final boolean hasEnumTypes = !enumTypes.isEmpty();
+        if (!reservoirConfig.isDefault() || !samplingConfig.isDefault() || metricKind != null || hasExtractors
+                || hasEnumTypes) {
+            src.append(",\n                    ").append(reservoirConfig(monitoredFunction, reservoirConfig))
+                    .append(",\n                    ").append(samplingConfig(monitoredFunction, samplingConfig));
+        }
+        if (metricKind != null || hasExtractors || hasEnumTypes) {
+            src.append(",\n                    ")
+                    .append(metricKind != null ? MetricKind.class.getName() + "." + metricKind.name() : "null");
+        }
+        if (hasExtractors) {
+            src.append(",\n                    ")
+                    .append(extractors.stream()
+                                    .map(extractor -> extractor != null ? "new " + extractor + "()" : "null")
+                                    .collect(Collectors.joining(", ",
+                                                                "java.util.Arrays.<" + TERM_EXTRACTOR + "<?>>asList(",
+                                                                ")")));
+        }
+        else if (hasEnumTypes) {
+            src.append(",\n                    java.util.Collections.<").append(TERM_EXTRACTOR)
+                    .append("<?>>emptyList()");
+        }
+        if (hasEnumTypes) {
+            // Enum constants are converted to terms when the method data is created
+            src.append(",\n                    ")
+                    .append(enumTypes.stream()
+                                    .map(enumType -> enumType + ".class")
+                                    .collect(Collectors.joining(", ", "java.util.Arrays.<Class<?>>asList(", ")")));
+        }
+        src.append(");\n\n");
+    }
+
+    private void appendPinningRegistration(StringBuilder src, TypeElement type, List<ExecutableElement> methods) {
+        final String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        src.append("    static {\n");
+        for (int i = 0; i < methods.size(); i++) {
+            src.append("        ").append(PINNING_MONITOR).append(".register(").append(stringLiteral(binaryName))
+                    .append(", ").append(stringLiteral(methods.get(i).getSimpleName().toString()))
+                    .append(", ").append(methodDataField(i)).append(");\n");
+        }
+        src.append("    }\n\n");
+    }
+
+    private static String reservoirConfig(MonitoredFunction monitoredFunction, ReservoirConfig reservoirConfig) {
+        if (reservoirConfig.isDefault()) {
+            return RESERVOIR_CONFIG + ".DEFAULT";
+        }
+        final TimerReservoirType[] types = monitoredFunction.timerReservoirType();
+        return "new " + RESERVOIR_CONFIG + "("
+                + (types.length > 0 ? TimerReservoirType.class.getName() + "." + types[0].name() : "null") + ", "
+                + monitoredFunction.slidingWindowSeconds() + "L, "
+                + monitoredFunction.decayingSize() + ", "
+                + monitoredFunction.decayingAlpha() + ", "
+                + monitoredFunction.histogramPrecision() + ")";
+    }
+
+    private static String samplingConfig(MonitoredFunction monitoredFunction, SamplingConfig samplingConfig) {
+        if (samplingConfig.isDefault()) {
+            return SAMPLING_CONFIG + ".DEFAULT";
+        }
+        final SamplingMode[] modes = monitoredFunction.sampling();
+        return "new " + SAMPLING_CONFIG + "("
+                + (modes.length > 0 ? SamplingMode.class.getName() + "." + modes[0].name() : "null") + ", "
+                + monitoredFunction.samplingRate() + ", "
+                + monitoredFunction.samplingInterval() + ", "
+                + monitoredFunction.samplingTargetPerSecond() + ")";
+    }
+
+    private static boolean isPublisher(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED
+                && ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName()
+                        .contentEquals(Flow.Publisher.class.getCanonicalName());
+    }
+
+    private void appendConstructor(StringBuilder src, String generatedName, ExecutableElement constructor) {
+        src.append("    ").append(visibility(constructor)).append(typeParameters(constructor.getTypeParameters()))
+                .append(generatedName).append('(').append(parameters(constructor)).append(')')
+                .append(throwsClause(constructor)).append(" {\n")
+                .append("        super(").append(arguments(constructor)).append(");\n")
+                .append("    }\n\n");
+    }
+
+    private void appendMethod(StringBuilder src, ExecutableElement method, int index) {
+        final boolean isVoid = method.getReturnType().getKind() == TypeKind.VOID;
+        final String methodData = methodDataField(index);
+        final String superCall = "super." + method.getSimpleName() + "(" + arguments(method) + ")";
+        src.append("    @Override\n")
+                .append("    ").append(visibility(method)).append(typeParameters(method.getTypeParameters()))
+                .append(method.getReturnType()).append(' ').append(method.getSimpleName())
+                .append('(').append(parameters(method)).append(')').append(throwsClause(method)).append(" {\n");
+        src.append("        final ").append(CONFIG_SNAPSHOT).append(" fmConfig = ")
+                .append(RECORDER).append(".config();\n");
+        src.append("        final ").append(METHOD_TIMERS).append(" fmParameterTimers = ");
+        if (metricTermPositions(method).isEmpty()) {
+            src.append("null;\n");
+        }
+        else {
+            src.append(RECORDER).append(".parameterTimers(fmConfig, ").append(methodData)
+                    .append(", new Object[] {").append(arguments(method)).append("});\n");
+        }
+        src.append("        final long fmStart = ").append(RECORDER).append(".start(fmConfig, ")
+                .append(methodData).append(");\n")
+                .append("        try {\n");
+        if (isVoid) {
+            src.append("            ").append(superCall).append(";\n");
+        }
+        else {
+            src.append("            final ").append(method.getReturnType()).append(" fmResult = ")
+                    .append(superCall).append(";\n");
+        }
+        if (isVoid || method.getReturnType().getKind().isPrimitive()) {
+            src.append("            ").append(RECORDER).append(".success(fmConfig, ").append(methodData)
+                    .append(", fmParameterTimers, fmStart);\n");
+            if (!isVoid) {
+                src.append("            return fmResult;\n");
+            }
+        }
+        else {
+            // Reference results go through the recorder, so that asynchronous results can be timed to completion
+            src.append("            return ").append(RECORDER)
+                    .append(isPublisher(method.getReturnType()) ? ".successPublisher(fmConfig, " : ".success(fmConfig, ")
+                    .append(methodData).append(", fmParameterTimers, fmStart, fmResult);\n");
+        }
+        src.append("        }\n")
+                .append("        catch (Throwable fmError) {\n")
+                .append("            ").append(RECORDER).append(".failure(fmConfig, ").append(methodData)
+                .append(", fmParameterTimers, fmStart, fmError);\n")
+                .append("            throw fmError;\n")
+                .append("        }\n")
+                .append("    }\n\n");
+    }
+
+    private static List<Integer> metricTermPositions(ExecutableElement method) {
+        final List<? extends VariableElement> params = method.getParameters();
+        // Same ordering as the aspect: by MetricTerm order, then by position
+        return IntStream.range(0, params.size())
+                .filter(i -> params.get(i).getAnnotation(MetricTerm.class) != null)
+                .boxed()
+                .sorted(Comparator.comparingInt(i -> params.get(i).getAnnotation(MetricTerm.class).order()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return Names of the term extractor classes of the terms at the given positions, null for terms without one
+     */
+    private static List<String> termExtractors(ExecutableElement method, List<Integer> positions) {
+        final List<? extends VariableElement> params = method.getParameters();
+        return positions.stream()
+                .map(i -> termExtractor(params.get(i).getAnnotation(MetricTerm.class)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return Distinct names of the enum types of the terms at the given positions that have no extractor
+     */
+    private static List<String> enumTermTypes(ExecutableElement method,
+                                              List<Integer> positions,
+                                              List<String> extractors) {
+        final List<? extends VariableElement> params = method.getParameters();
+        return IntStream.range(0, positions.size())
+                .filter(i -> extractors.get(i) == null)
+                .mapToObj(i -> params.get(positions.get(i)).asType())
+                .filter(paramType -> paramType.getKind() == TypeKind.DECLARED)
+                .map(paramType -> ((DeclaredType) paramType).asElement())
+                .filter(element -> element.getKind() == ElementKind.ENUM)
+                .map(element -> ((TypeElement) element).getQualifiedName().toString())
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    private static String termExtractor(MetricTerm metricTerm) {
+        String name;
+        try {
+            name = metricTerm.extractor().getCanonicalName();
+        }
+        catch (MirroredTypeException e) {
+            // Classes being compiled are not loaded, so only their type is available
+            name = e.getTypeMirror().toString();
+        }
+        return TermExtractor.None.class.getCanonicalName().equals(name) ? null : name;
+    }
+
+    private static String parameters(ExecutableElement executable) {
+        final List<? extends VariableElement> params = executable.getParameters();
+        return IntStream.range(0, params.size())
+                .mapToObj(i -> {
+                    final TypeMirror paramType = params.get(i).asType();
+                    final String renderedType = executable.isVarArgs() && i == params.size() - 1
+                                                ? ((ArrayType) paramType).getComponentType() + "..."
+                                                : paramType.toString();
+                    return "final " + renderedType + " " + params.get(i).getSimpleName();
+                })
+                .collect(Collectors.joining(", "));
+    }
+
+    private static String arguments(ExecutableElement executable) {
+        return executable.getParameters()
+                .stream()
+                .map(param -> param.getSimpleName().toString())
+                .collect(Collectors.joining(", "));
+    }
+
+    private static String throwsClause(ExecutableElement executable) {
+        return executable.getThrownTypes().isEmpty()
+               ? ""
+               : executable.getThrownTypes()
+                       .stream()
+                       .map(TypeMirror::toString)
+                       .collect(Collectors.joining(", ", " throws ", ""));
+    }
+
+    private static String typeParameters(List<? extends TypeParameterElement> typeParameters) {
+        if (typeParameters.isEmpty()) {
+            return "";
+        }
+        return typeParameters.stream()
+                .map(typeParameter -> {
+                    final List<String> bounds = typeParameter.getBounds()
+                            .stream()
+                            .map(TypeMirror::toString)
+                            .filter(bound -> !bound.equals("java.lang.Object"))
+                            .collect(Collectors.toList());
+                    return bounds.isEmpty()
+                           ? typeParameter.getSimpleName().toString()
+                           : typeParameter.getSimpleName() + " extends " + String.join(" & ", bounds);
+                })
+                .collect(Collectors.joining(", ", "<", "> "));
+    }
+
+    private static String typeArguments(List<? extends TypeParameterElement> typeParameters) {
+        return typeParameters.isEmpty()
+               ? ""
+               : typeParameters.stream()
+                       .map(typeParameter -> typeParameter.getSimpleName().toString())
+                       .collect(Collectors.joining(", ", "<", ">"));
+    }
+
+    private static String visibility(ExecutableElement executable) {
+        if (executable.getModifiers().contains(Modifier.PUBLIC)) {
+            return "public ";
+        }
+        if (executable.getModifiers().contains(Modifier.PROTECTED)) {
+            return "protected ";
+        }
+        return "";
+    }
+
+    private static String methodDataField(int index) {
+        return "FM_METHOD_DATA_" + index;
+    }
+
+    private static String generatedSimpleName(TypeElement type) {
+        final StringBuilder name = new StringBuilder(type.getSimpleName());
+        Element enclosing = type.getEnclosingElement();
+        while (enclosing instanceof TypeElement) {
+            name.insert(0, enclosing.getSimpleName() + "_");
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return name.append(GENERATED_CLASS_SUFFIX).toString();
+    }
+
+    private static PackageElement packageOf(Element element) {
+        Element current = element;
+        while (!(current instanceof PackageElement)) {
+            current = current.getEnclosingElement();
+        }
+        return (PackageElement) current;
+    }
+
+    private static String stringLiteral(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.UniformReservoir;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ *
+ */
+public class BufferedTimerTest {
+
+    @Test
+    public void testReadsSeeBufferedSamples() {
+        final BufferedTimer timer = new BufferedTimer(new UniformReservoir(), Clock.defaultClock(), 16);
+        timer.update(5, TimeUnit.MILLISECONDS);
+        timer.update(7, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(2, timer.getCount());
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(7), timer.getSnapshot().getMax());
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(5), timer.getSnapshot().getMin());
+    }
+
+    @Test
+    public void testConcurrentUpdatesAreNotLost() throws Exception {
+        final BufferedTimer timer = new BufferedTimer(new UniformReservoir(), Clock.defaultClock(), 8);
+        final int numThreads = 8;
+        final int perThread = 10_000;
+        final ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        IntStream.range(0, numThreads)
+                .forEach(i -> executorService.submit(
+                        () -> IntStream.range(0, perThread).forEach(j -> timer.update(j, TimeUnit.NANOSECONDS))));
+        executorService.shutdown();
+        Assert.assertTrue(executorService.awaitTermination(1, TimeUnit.MINUTES));
+        Assert.assertEquals(numThreads * perThread, timer.getCount());
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ */
+public class CoarseClockTest {
+
+    @Test
+    public void testTickAdvancesMonotonically() throws Exception {
+        try (CoarseClock clock = CoarseClock.start(1, TimeUnit.MILLISECONDS)) {
+            Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(1), clock.getResolutionNanos());
+            long previous = clock.getTick();
+            final long first = previous;
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (previous - first < TimeUnit.MILLISECONDS.toNanos(20) && System.nanoTime() < deadline) {
+                final long tick = clock.getTick();
+                Assert.assertTrue(tick >= previous);
+                previous = tick;
+            }
+            Assert.assertTrue(previous - first >= TimeUnit.MILLISECONDS.toNanos(20));
+        }
+    }
+
+    @Test
+    public void testTickLagsBehindByAboutTheResolution() throws Exception {
+        try (CoarseClock clock = CoarseClock.start(10, TimeUnit.MILLISECONDS)) {
+            Thread.sleep(50);
+            final long lag = System.nanoTime() - clock.getTick();
+            Assert.assertTrue(lag >= 0);
+            // Generous bound, parking may overshoot on a loaded machine
+            Assert.assertTrue(lag < TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    @Test
+    public void testCloseStopsUpdates() throws Exception {
+        final CoarseClock clock = CoarseClock.start(1, TimeUnit.MILLISECONDS);
+        clock.close();
+        // Let an update that was in progress when closing complete
+        Thread.sleep(20);
+        final long tick = clock.getTick();
+        Thread.sleep(50);
+        Assert.assertEquals(tick, clock.getTick());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPositiveResolution() {
+        CoarseClock.start(0, TimeUnit.MILLISECONDS);
+    }
+}
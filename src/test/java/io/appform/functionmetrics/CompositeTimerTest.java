@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ */
+public class CompositeTimerTest {
+
+    @Test
+    public void testMergesBucketSnapshotsExactly() {
+        final Timer success = new Timer(new HdrHistogramReservoir(2, 60, TimeUnit.SECONDS));
+        final Timer failure = new Timer(new HdrHistogramReservoir(2, 60, TimeUnit.SECONDS));
+        for (int i = 1; i <= 90; i++) {
+            success.update(i, TimeUnit.MILLISECONDS);
+        }
+        for (int i = 91; i <= 100; i++) {
+            failure.update(i, TimeUnit.MILLISECONDS);
+        }
+        final CompositeTimer all = new CompositeTimer(success, failure, false);
+        final Snapshot snapshot = all.getSnapshot();
+        Assert.assertTrue(snapshot instanceof BucketSnapshot);
+        Assert.assertEquals(100, all.getCount());
+        Assert.assertEquals(100, snapshot.size());
+        final long p95 = TimeUnit.MILLISECONDS.toNanos(95);
+        Assert.assertEquals(p95, snapshot.getValue(0.95), 0.01 * p95);
+    }
+
+    @Test
+    public void testWeightsSampledSnapshotsByCount() {
+        final Timer success = new Timer(new UniformReservoir(10));
+        final Timer failure = new Timer(new UniformReservoir(10));
+        for (int i = 0; i < 990; i++) {
+            success.update(1, TimeUnit.MILLISECONDS);
+        }
+        for (int i = 0; i < 10; i++) {
+            failure.update(100, TimeUnit.MILLISECONDS);
+        }
+        final Snapshot weighted = new CompositeTimer(success, failure, true).getSnapshot();
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(1), weighted.getValue(0.95), 0);
+        final Snapshot unweighted = new CompositeTimer(success, failure, false).getSnapshot();
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), unweighted.getValue(0.95), 0);
+    }
+
+    @Test
+    public void testDirectUpdatesAreRecorded() throws Exception {
+        final Timer success = new Timer(new HdrHistogramReservoir(2, 60, TimeUnit.SECONDS));
+        final Timer failure = new Timer(new HdrHistogramReservoir(2, 60, TimeUnit.SECONDS));
+        success.update(1, TimeUnit.MILLISECONDS);
+        final CompositeTimer all = new CompositeTimer(success, failure,
+                                                      () -> new HdrHistogramReservoir(2, 60, TimeUnit.SECONDS),
+                                                      false);
+        all.update(2, TimeUnit.MILLISECONDS);
+        all.update(Duration.ofMillis(3));
+        Assert.assertEquals("done", all.time(() -> "done"));
+        all.time(() -> { });
+        all.time().stop();
+        Assert.assertEquals(6, all.getCount());
+        Assert.assertEquals(1, success.getCount());
+        Assert.assertEquals(0, failure.getCount());
+        final Snapshot snapshot = all.getSnapshot();
+        Assert.assertTrue(snapshot instanceof BucketSnapshot);
+        Assert.assertEquals(6, snapshot.size());
+        final long max = TimeUnit.MILLISECONDS.toNanos(3);
+        Assert.assertEquals(max, snapshot.getMax(), 0.01 * max);
+    }
+
+    @Test
+    public void testDirectUpdatesInBucketCounts() {
+        final HdrHistogramReservoir successReservoir = new HdrHistogramReservoir(2, 60, TimeUnit.SECONDS);
+        final HdrHistogramReservoir failureReservoir = new HdrHistogramReservoir(2, 60, TimeUnit.SECONDS);
+        final CompositeTimer all = new CompositeTimer(new Timer(successReservoir), new Timer(failureReservoir),
+                                                      () -> new HdrHistogramReservoir(2, 60, TimeUnit.SECONDS),
+                                                      false);
+        final BucketCounts counts = all.bucketCounts(successReservoir, failureReservoir);
+        all.getFirst().update(1, TimeUnit.MILLISECONDS);
+        all.update(2, TimeUnit.MILLISECONDS);
+        final long[] totals = new long[counts.getBuckets().size()];
+        counts.addTotalCounts(totals);
+        Assert.assertEquals(2, Arrays.stream(totals).sum());
+    }
+}
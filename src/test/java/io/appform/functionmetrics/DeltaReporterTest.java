@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ */
+public class DeltaReporterTest {
+
+    private static final Clock FIXED_CLOCK = new Clock() {
+        @Override
+        public long getTick() {
+            return 0;
+        }
+
+        @Override
+        public long getTime() {
+            return 1000;
+        }
+    };
+
+    @Test
+    public void testReportsCountDeltas() {
+        final MetricRegistry registry = new MetricRegistry();
+        final List<String> reports = new ArrayList<>();
+        final DeltaReporter reporter = DeltaReporter.forRegistry(registry)
+                .output(reports::add)
+                .clock(FIXED_CLOCK)
+                .build();
+        registry.counter("delta.counter").inc(5);
+        registry.meter("delta.meter").mark(3);
+        registry.timer("delta.timer").update(1, TimeUnit.MILLISECONDS);
+        registry.gauge("delta.gauge", () -> () -> 42);
+        reporter.report();
+        registry.counter("delta.counter").inc(2);
+        registry.timer("delta.timer").update(1, TimeUnit.MILLISECONDS);
+        reporter.report();
+
+        Assert.assertEquals(2, reports.size());
+        Assert.assertEquals("delta.gauge value=42i 1000000000\n"
+                                    + "delta.counter count=5i 1000000000\n"
+                                    + "delta.meter count=3i 1000000000\n"
+                                    + "delta.timer count=1i 1000000000\n",
+                            reports.get(0));
+        Assert.assertEquals("delta.gauge value=42i 1000000000\n"
+                                    + "delta.counter count=2i 1000000000\n"
+                                    + "delta.meter count=0i 1000000000\n"
+                                    + "delta.timer count=1i 1000000000\n",
+                            reports.get(1));
+        reporter.close();
+    }
+
+    @Test
+    public void testEncoderEscapesNames() {
+        final StringBuilder out = new StringBuilder();
+        new LineProtocolEncoder().appendDelta(out, "a b,c", 1, null, null, 2);
+        Assert.assertEquals("a\\ b\\,c count=1i 2000000\n", out.toString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testOutputRequired() {
+        DeltaReporter.forRegistry(new MetricRegistry()).build();
+    }
+
+    @Test
+    public void testNonFiniteGaugesSkipped() {
+        final LineProtocolEncoder encoder = new LineProtocolEncoder();
+        final StringBuilder out = new StringBuilder();
+        encoder.appendValue(out, "nan", Double.NaN, 1);
+        encoder.appendValue(out, "infinite", Double.POSITIVE_INFINITY, 1);
+        encoder.appendValue(out, "negativeInfinite", Float.NEGATIVE_INFINITY, 1);
+        Assert.assertEquals("", out.toString());
+        encoder.appendValue(out, "ratio", 0.5, 1);
+        encoder.appendValue(out, "size", 3, 1);
+        Assert.assertEquals("ratio value=0.5 1000000\nsize value=3i 1000000\n", out.toString());
+    }
+}
@@ -16,19 +16,28 @@
 
 package io.appform.functionmetrics;
 
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metered;
 import com.codahale.metrics.MetricFilter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
 import com.codahale.metrics.Timer;
 import com.google.common.base.CaseFormat;
+import com.google.common.base.Converter;
 import com.google.common.base.Stopwatch;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -39,16 +48,16 @@ public class FunctionTimerAspectTest {
 
     private final static MetricRegistry registry = SharedMetricRegistries.getOrCreate("test-metrics");
 
+    private static Options.OptionsBuilder options() {
+        return new Options.OptionsBuilder()
+                .enableParameterCapture(true)
+                .caseFormatConverter(CaseFormat.LOWER_UNDERSCORE.converterTo(CaseFormat.LOWER_CAMEL))
+                .timerReservoirType(TimerReservoirType.DECAYING);
+    }
+
     @BeforeClass
     public static void setup() {
-        FunctionMetricsManager.initialize(
-                "phonepe.test",
-                registry,
-                new Options.OptionsBuilder()
-                        .enableParameterCapture(true)
-                        .caseFormatConverter(CaseFormat.LOWER_UNDERSCORE.converterTo(CaseFormat.LOWER_CAMEL))
-                        .timerReservoirType(TimerReservoirType.DECAYING)
-                        .build());
+        FunctionMetricsManager.initialize("phonepe.test", registry, options().build());
     }
 
     @After
@@ -225,19 +234,21 @@ public class FunctionTimerAspectTest {
     }
 
     @Test
-    public void testMetricsCollectionParameterInvalid() throws Exception {
+    public void testMetricsCollectionIntegralParameter() throws Exception {
         final MyClass myClass = new MyClass();
         myClass.parameterInvalidFunction("a", 5);
 
         final FunctionInvocation invocation
-                = new FunctionInvocation("MyClass", "parameterInvalidFunction", "");
+                = new FunctionInvocation("MyClass", "parameterInvalidFunction", "a.5");
         final List<Timer> failureTimers = FunctionMetricsManager.timers(TimerDomain.FAILURE, invocation);
-        Assert.assertEquals(1, failureTimers.size());
-        Assert.assertEquals(0, failureTimers.get(0).getCount());
+        Assert.assertEquals(2, failureTimers.size());
+        failureTimers.forEach(failureTimer -> Assert.assertEquals(0, failureTimer.getCount()));
 
         final List<Timer> successTimers = FunctionMetricsManager.timers(TimerDomain.SUCCESS, invocation);
-        Assert.assertEquals(1, successTimers.size());
-        Assert.assertEquals(1, successTimers.get(0).getCount());
+        Assert.assertEquals(2, successTimers.size());
+        successTimers.forEach(successTimer -> Assert.assertEquals(1, successTimer.getCount()));
+        Assert.assertEquals(1, registry.getTimers()
+                .get("phonepe.test.MyClass.parameterInvalidFunction.a.5.success").getCount());
     }
 
     @Test
@@ -256,6 +267,764 @@ public class FunctionTimerAspectTest {
         Assert.assertEquals(1, successTimers.get(0).getCount());
     }
 
+    @Test
+    public void testCachedTimersReResolvedAfterRemoval() throws Exception {
+        final MyClass myClass = new MyClass();
+        myClass.myFunction(2, 3);
+        registry.removeMatching(MetricFilter.ALL);
+        myClass.myFunction(2, 3);
+
+        final FunctionInvocation invocation
+                = new FunctionInvocation("MyClass", "myOverloadedFunction", "");
+        final List<Timer> successTimers = FunctionMetricsManager.timers(TimerDomain.SUCCESS, invocation);
+        Assert.assertEquals(1, successTimers.size());
+        Assert.assertEquals(1, successTimers.get(0).getCount());
+        final List<Timer> allTimers = FunctionMetricsManager.timers(TimerDomain.ALL, invocation);
+        Assert.assertEquals(1, allTimers.get(0).getCount());
+    }
+
+    @Test
+    public void testRemovalInvalidatesOnlyOwnHandles() throws Exception {
+        final MethodTimers first = FunctionMetricsManager.methodTimers(
+                new MethodData("MyClass", "firstFunction", null), null);
+        final MethodTimers second = FunctionMetricsManager.methodTimers(
+                new MethodData("MyClass", "secondFunction", null), null);
+        Assert.assertTrue(first.isCurrent());
+        Assert.assertTrue(second.isCurrent());
+
+        registry.remove("phonepe.test.MyClass.secondFunction.failure");
+        Assert.assertTrue(first.isCurrent());
+        Assert.assertFalse(second.isCurrent());
+
+        final MethodTimers resolved = FunctionMetricsManager.methodTimers(
+                new MethodData("MyClass", "secondFunction", null), null);
+        Assert.assertTrue(resolved.isCurrent());
+        Assert.assertNotSame(second.getFailure(), resolved.getFailure());
+        Assert.assertSame(second.getSuccess(), resolved.getSuccess());
+    }
+
+    @Test
+    public void testPerMethodReservoirOverride() throws Exception {
+        final MyClass myClass = new MyClass();
+        myClass.histogramFunction();
+        myClass.myFunction(2, 3);
+
+        final List<Timer> histogramTimers = FunctionMetricsManager.timers(
+                TimerDomain.SUCCESS, new FunctionInvocation("MyClass", "histogramFunction", ""));
+        Assert.assertEquals(1, histogramTimers.get(0).getCount());
+        Assert.assertTrue(histogramTimers.get(0).getSnapshot() instanceof BucketSnapshot);
+        final List<Timer> defaultTimers = FunctionMetricsManager.timers(
+                TimerDomain.SUCCESS, new FunctionInvocation("MyClass", "myOverloadedFunction", ""));
+        Assert.assertFalse(defaultTimers.get(0).getSnapshot() instanceof BucketSnapshot);
+    }
+
+    @Test
+    public void testSampledMethodKeepsExactCounts() throws Exception {
+        final MyClass myClass = new MyClass();
+        for (int i = 0; i < 100; i++) {
+            myClass.sampledFunction();
+        }
+
+        final FunctionInvocation invocation = new FunctionInvocation("MyClass", "sampledFunction", "");
+        final Timer successTimer = FunctionMetricsManager.timers(TimerDomain.SUCCESS, invocation).get(0);
+        Assert.assertTrue(successTimer instanceof SampledTimer);
+        Assert.assertEquals(100, successTimer.getCount());
+        Assert.assertEquals(1, successTimer.getSnapshot().size());
+        Assert.assertEquals(99, ((SampledTimer) successTimer).getUnsampledCount());
+        Assert.assertTrue(successTimer.getMeanRate() > 0);
+        Assert.assertEquals(100, FunctionMetricsManager.timers(TimerDomain.ALL, invocation).get(0).getCount());
+    }
+
+    @Test
+    public void testMetricKinds() throws Exception {
+        final MyClass myClass = new MyClass();
+        for (int i = 0; i < 3; i++) {
+            myClass.meteredFunction(false);
+            myClass.hybridFunction(false);
+        }
+        try {
+            myClass.meteredFunction(true);
+            Assert.fail("Expected exception");
+        }
+        catch (IllegalStateException ignored) {
+        }
+        try {
+            myClass.hybridFunction(true);
+            Assert.fail("Expected exception");
+        }
+        catch (IllegalStateException ignored) {
+        }
+
+        final String meteredPrefix = "phonepe.test.MyClass.meteredFunction.";
+        Assert.assertEquals(3, registry.meter(meteredPrefix + "success").getCount());
+        Assert.assertEquals(1, registry.meter(meteredPrefix + "failure").getCount());
+        Assert.assertEquals(4, registry.meter(meteredPrefix + "all").getCount());
+        Assert.assertFalse(registry.getTimers().containsKey(meteredPrefix + "all"));
+
+        final String hybridPrefix = "phonepe.test.MyClass.hybridFunction.";
+        Assert.assertEquals(3, registry.meter(hybridPrefix + "success").getCount());
+        Assert.assertEquals(1, registry.meter(hybridPrefix + "failure").getCount());
+        final Timer hybridAll = registry.timer(hybridPrefix + "all");
+        Assert.assertEquals(4, hybridAll.getCount());
+        Assert.assertEquals(4, hybridAll.getSnapshot().size());
+    }
+
+    @Test
+    public void testTimersOfMeteredFunction() throws Exception {
+        final MyClass myClass = new MyClass();
+        final FunctionInvocation invocation = new FunctionInvocation("MyClass", "meteredFunction", "");
+        final String meteredPrefix = "phonepe.test.MyClass.meteredFunction.";
+        // Called before the function, so a timer is created that the function does not record into
+        Assert.assertEquals(1, FunctionMetricsManager.timers(TimerDomain.SUCCESS, invocation).size());
+        Assert.assertEquals(1, FunctionMetricsManager.metrics(TimerDomain.SUCCESS, invocation).size());
+        Assert.assertTrue(FunctionMetricsManager.metrics(TimerDomain.FAILURE, invocation).isEmpty());
+
+        myClass.meteredFunction(false);
+        myClass.meteredFunction(false);
+        Assert.assertEquals(2, registry.meter(meteredPrefix + "success").getCount());
+        Assert.assertFalse(registry.getTimers().containsKey(meteredPrefix + "success"));
+        Assert.assertTrue(FunctionMetricsManager.timers(TimerDomain.SUCCESS, invocation).isEmpty());
+        final List<Metered> metrics = FunctionMetricsManager.metrics(TimerDomain.SUCCESS, invocation);
+        Assert.assertEquals(1, metrics.size());
+        Assert.assertTrue(metrics.get(0) instanceof Meter);
+        Assert.assertEquals(2, metrics.get(0).getCount());
+
+        final FunctionInvocation hybridInvocation = new FunctionInvocation("MyClass", "hybridFunction", "");
+        myClass.hybridFunction(false);
+        Assert.assertTrue(FunctionMetricsManager.timers(TimerDomain.SUCCESS, hybridInvocation).isEmpty());
+        Assert.assertEquals(1, FunctionMetricsManager.timers(TimerDomain.ALL, hybridInvocation).get(0).getCount());
+        Assert.assertEquals(1, FunctionMetricsManager.metrics(TimerDomain.SUCCESS, hybridInvocation)
+                .get(0).getCount());
+    }
+
+    @Test
+    public void testDerivedAllTimer() throws Exception {
+        final MyClass myClass = new MyClass();
+        final String prefix = "phonepe.test.MyClass.myFunction.";
+        FunctionMetricsManager.reconfigure(options().derivedAllTimer(true).build());
+        try {
+            for (int i = 0; i < 5; i++) {
+                try {
+                    myClass.pubFunction(i);
+                }
+                catch (RuntimeException e) {
+                    // expected for even values
+                }
+            }
+            final Timer allTimer = registry.timer(prefix + "all");
+            Assert.assertTrue(allTimer instanceof CompositeTimer);
+            Assert.assertEquals(2, registry.timer(prefix + "success").getCount());
+            Assert.assertEquals(3, registry.timer(prefix + "failure").getCount());
+            Assert.assertEquals(5, allTimer.getCount());
+            Assert.assertEquals(5, allTimer.getSnapshot().size());
+            Assert.assertTrue(allTimer.getMeanRate() > 0);
+        }
+        finally {
+            FunctionMetricsManager.reconfigure(options().build());
+        }
+        Assert.assertFalse(registry.getTimers().containsKey(prefix + "all"));
+    }
+
+    @Test
+    public void testDerivedAllTimerAfterPartRemoval() throws Exception {
+        final MyClass myClass = new MyClass();
+        final String prefix = "phonepe.test.MyClass.myFunction.";
+        FunctionMetricsManager.reconfigure(options().derivedAllTimer(true).build());
+        try {
+            myClass.pubFunction(1);
+            try {
+                myClass.pubFunction(2);
+            }
+            catch (RuntimeException e) {
+                // expected for even values
+            }
+            registry.remove(prefix + "failure");
+            for (int i = 3; i < 6; i++) {
+                try {
+                    myClass.pubFunction(i);
+                }
+                catch (RuntimeException e) {
+                    // expected for even values
+                }
+            }
+            final CompositeTimer allTimer = (CompositeTimer) registry.timer(prefix + "all");
+            Assert.assertSame(registry.timer(prefix + "success"), allTimer.getFirst());
+            Assert.assertSame(registry.timer(prefix + "failure"), allTimer.getSecond());
+            Assert.assertEquals(3, registry.timer(prefix + "success").getCount());
+            Assert.assertEquals(1, registry.timer(prefix + "failure").getCount());
+            Assert.assertEquals(4, allTimer.getCount());
+            // Direct updates of the registered timer are recorded rather than rejected
+            registry.timer(prefix + "all").update(1, TimeUnit.MILLISECONDS);
+            registry.timer(prefix + "all").time().stop();
+            Assert.assertEquals(6, allTimer.getCount());
+            Assert.assertEquals(3, registry.timer(prefix + "success").getCount());
+        }
+        finally {
+            FunctionMetricsManager.reconfigure(options().build());
+        }
+    }
+
+    @Test
+    public void testAsyncCompletionTiming() throws Exception {
+        final MyClass myClass = new MyClass();
+        final FunctionInvocation asyncInvocation = new FunctionInvocation("MyClass", "asyncFunction", "");
+        final FunctionInvocation publisherInvocation = new FunctionInvocation("MyClass", "publisherFunction", "");
+        FunctionMetricsManager.reconfigure(options().asyncCompletionTiming(true).build());
+        try {
+            final CompletableFuture<String> succeeding = new CompletableFuture<>();
+            final CompletableFuture<String> failing = new CompletableFuture<>();
+            Assert.assertSame(succeeding, myClass.asyncFunction(succeeding));
+            myClass.asyncFunction(failing);
+            myClass.asyncFunction(CompletableFuture.completedFuture("done"));
+            final Timer successTimer = FunctionMetricsManager.timers(TimerDomain.SUCCESS, asyncInvocation).get(0);
+            final Timer failureTimer = FunctionMetricsManager.timers(TimerDomain.FAILURE, asyncInvocation).get(0);
+            Assert.assertEquals(1, successTimer.getCount());
+            succeeding.complete("ok");
+            failing.completeExceptionally(new RuntimeException("Test exception"));
+            Assert.assertEquals(2, successTimer.getCount());
+            Assert.assertEquals(1, failureTimer.getCount());
+            Assert.assertEquals(3, FunctionMetricsManager.timers(TimerDomain.ALL, asyncInvocation).get(0).getCount());
+
+            final CountDownLatch completed = new CountDownLatch(1);
+            try (SubmissionPublisher<String> publisher = new SubmissionPublisher<>()) {
+                myClass.publisherFunction(publisher).subscribe(new Flow.Subscriber<String>() {
+                    @Override
+                    public void onSubscribe(Flow.Subscription subscription) {
+                        subscription.request(Long.MAX_VALUE);
+                    }
+
+                    @Override
+                    public void onNext(String item) {
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        completed.countDown();
+                    }
+                });
+                publisher.submit("item");
+                Assert.assertEquals(0, FunctionMetricsManager.timers(TimerDomain.ALL, publisherInvocation)
+                        .get(0).getCount());
+            }
+            Assert.assertTrue(completed.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, FunctionMetricsManager.timers(TimerDomain.SUCCESS, publisherInvocation)
+                    .get(0).getCount());
+        }
+        finally {
+            FunctionMetricsManager.reconfigure(options().build());
+        }
+    }
+
+    @Test
+    public void testVirtualThreadRecordingMode() throws Exception {
+        final MyClass myClass = new MyClass();
+        final FunctionInvocation invocation = new FunctionInvocation("MyClass", "myOverloadedFunction", "");
+        try {
+            FunctionMetricsManager.reconfigure(options()
+                                                       .timerReservoirType(TimerReservoirType.SLIDING)
+                                                       .recordingMode(RecordingMode.VIRTUAL_THREADS)
+                                                       .pinningDetection(true)
+                                                       .build());
+            myClass.myFunction(2, 3);
+            final Timer timer = FunctionMetricsManager.timers(TimerDomain.SUCCESS, invocation).get(0);
+            Assert.assertEquals(1, timer.getCount());
+            Assert.assertTrue(timer.getSnapshot() instanceof BucketSnapshot);
+        }
+        finally {
+            FunctionMetricsManager.reconfigure(options().build());
+        }
+    }
+
+    @Test
+    public void testExceptionBreakdown() throws Exception {
+        final MyClass myClass = new MyClass();
+        final String failurePrefix = "phonepe.test.MyClass.myFunction.failure.";
+        try {
+            FunctionMetricsManager.reconfigure(options().exceptionBreakdown(true).build());
+            for (int i = 0; i < 2; i++) {
+                try {
+                    myClass.pubFunction(2);
+                    Assert.fail("Exception should have been propagated");
+                }
+                catch (RuntimeException e) {
+                    // expected
+                }
+            }
+            Assert.assertEquals(2, registry.timer(failurePrefix + "RuntimeException").getCount());
+
+            FunctionMetricsManager.reconfigure(options()
+                                                       .exceptionBreakdown(true)
+                                                       .exceptionTypes(IllegalStateException.class)
+                                                       .build());
+            try {
+                myClass.pubFunction(2);
+                Assert.fail("Exception should have been propagated");
+            }
+            catch (RuntimeException e) {
+                // expected
+            }
+            Assert.assertEquals(1, registry.timer(failurePrefix + "other").getCount());
+            Assert.assertEquals(2, registry.timer(failurePrefix + "RuntimeException").getCount());
+        }
+        finally {
+            FunctionMetricsManager.reconfigure(options().build());
+        }
+    }
+
+    @Test
+    public void testExceptionBreakdownSameSimpleName() throws Exception {
+        final MyClass myClass = new MyClass();
+        final String failurePrefix = "phonepe.test.MyClass.rethrowingFunction.failure.";
+        try {
+            FunctionMetricsManager.reconfigure(options().exceptionBreakdown(true).build());
+            final List<RuntimeException> errors = Arrays.asList(new java.util.ConcurrentModificationException(),
+                                                                new MyClass.ConcurrentModificationException(),
+                                                                new MyClass.ConcurrentModificationException());
+            for (RuntimeException error : errors) {
+                try {
+                    myClass.rethrowingFunction(error);
+                    Assert.fail("Exception should have been propagated");
+                }
+                catch (RuntimeException e) {
+                    Assert.assertSame(error, e);
+                }
+            }
+            Assert.assertEquals(1, registry.timer(failurePrefix + "ConcurrentModificationException").getCount());
+            final String nestedName = MyClass.ConcurrentModificationException.class.getName().replace('$', '_');
+            Assert.assertEquals(2, registry.timer(failurePrefix + nestedName).getCount());
+        }
+        finally {
+            FunctionMetricsManager.reconfigure(options().build());
+        }
+    }
+
+    private static final String PARAMETERIZED_TIMER = "phonepe.test.MyClass.parameterValidFunction.abc.def.success";
+
+    @Test
+    public void testReconfigure() throws Exception {
+        final MyClass myClass = new MyClass();
+        final FunctionInvocation invocation = new FunctionInvocation("MyClass", "myOverloadedFunction", "");
+        myClass.myFunction(2, 3);
+        final Timer before = FunctionMetricsManager.timers(TimerDomain.SUCCESS, invocation).get(0);
+        Assert.assertEquals(1, before.getCount());
+        try {
+            FunctionMetricsManager.reconfigure(options()
+                                                       .enableParameterCapture(false)
+                                                       .timerReservoirType(TimerReservoirType.HDR_HISTOGRAM)
+                                                       .build());
+            myClass.myFunction(2, 3);
+            myClass.parameterValidFunction("abc", "def");
+
+            final Timer after = FunctionMetricsManager.timers(TimerDomain.SUCCESS, invocation).get(0);
+            Assert.assertNotSame(before, after);
+            Assert.assertEquals(1, after.getCount());
+            Assert.assertTrue(after.getSnapshot() instanceof BucketSnapshot);
+            Assert.assertFalse(registry.getTimers().containsKey(PARAMETERIZED_TIMER));
+        }
+        finally {
+            FunctionMetricsManager.reconfigure(options().build());
+        }
+        myClass.parameterValidFunction("abc", "def");
+        Assert.assertEquals(1, registry.timer(PARAMETERIZED_TIMER).getCount());
+    }
+
+    @Test
+    public void testReconfigureCaseFormat() throws Exception {
+        final MyClass myClass = new MyClass();
+        final String prefix = "phonepe.test.MyClass.parameterValidFunction.";
+        myClass.parameterValidFunction("abc", "John_Cartier047");
+        Assert.assertTrue(registry.getTimers().containsKey(prefix + "abc.johnCartier047.success"));
+        try {
+            FunctionMetricsManager.reconfigure(options()
+                                                       .caseFormatConverter(CaseFormat.LOWER_UNDERSCORE.converterTo(
+                                                               CaseFormat.UPPER_UNDERSCORE))
+                                                       .build());
+            Assert.assertFalse(registry.getTimers().containsKey(prefix + "abc.johnCartier047.success"));
+            myClass.parameterValidFunction("abc", "John_Cartier047");
+            Assert.assertEquals(1, registry.timer(prefix + "ABC.JOHN_CARTIER047.success").getCount());
+        }
+        finally {
+            FunctionMetricsManager.reconfigure(options().build());
+        }
+    }
+
+    @Test
+    public void testEnumTermsConvertedUpFront() throws Exception {
+        final MyClass myClass = new MyClass();
+        myClass.enumTermFunction(MyClass.Region.NORTH_EAST);
+        Assert.assertEquals(1, registry.timer("phonepe.test.MyClass.enumTermFunction.northEast.success").getCount());
+        final Set<String> converted = ConcurrentHashMap.newKeySet();
+        try {
+            FunctionMetricsManager.reconfigure(options()
+                                                       .caseFormatConverter(Converter.from(value -> {
+                                                           converted.add(value);
+                                                           return value.toLowerCase();
+                                                       }, value -> value))
+                                                       .build());
+            // Constants of the enum are converted with the new settings before any call passes them
+            Assert.assertTrue(converted.containsAll(Arrays.asList("NORTH_EAST", "SOUTH")));
+            converted.clear();
+            myClass.enumTermFunction(MyClass.Region.SOUTH);
+            Assert.assertTrue(converted.isEmpty());
+            Assert.assertEquals(1, registry.timer("phonepe.test.MyClass.enumTermFunction.south.success").getCount());
+        }
+        finally {
+            FunctionMetricsManager.reconfigure(options().build());
+        }
+    }
+
+    @Test
+    public void testUnsupportedHistogramPrecisionCapped() throws Exception {
+        final MyClass myClass = new MyClass();
+        myClass.unsupportedPrecisionFunction();
+        final Timer timer = registry.getTimers().get("phonepe.test.MyClass.unsupportedPrecisionFunction.success");
+        Assert.assertEquals(1, timer.getCount());
+        Assert.assertEquals(HistogramBuckets.MAX_SIGNIFICANT_DIGITS,
+                            ((BucketSnapshot) timer.getSnapshot()).getBuckets().getSignificantDigits());
+    }
+
+    @Test
+    public void testOffHeapParameterTimers() throws Exception {
+        final MyClass myClass = new MyClass();
+        try {
+            FunctionMetricsManager.reconfigure(options()
+                                                       .parameterReservoirType(TimerReservoirType.OFF_HEAP_HISTOGRAM)
+                                                       .build());
+            myClass.parameterValidFunction("abc", "def");
+            myClass.parameterValidFunction("abc", "def");
+
+            final Timer parameterTimer = registry.timer(PARAMETERIZED_TIMER);
+            Assert.assertEquals(2, parameterTimer.getCount());
+            Assert.assertTrue(parameterTimer.getSnapshot() instanceof BucketSnapshot);
+            final Timer methodTimer = registry.timer("phonepe.test.MyClass.parameterValidFunction.success");
+            Assert.assertEquals(2, methodTimer.getCount());
+            Assert.assertFalse(methodTimer.getSnapshot() instanceof BucketSnapshot);
+        }
+        finally {
+            FunctionMetricsManager.reconfigure(options().build());
+        }
+    }
+
+    @Test
+    public void testHighPrecisionTiming() throws Exception {
+        final MyClass myClass = new MyClass();
+        final String timerName = "phonepe.test.MyClass.myOverloadedFunction.success";
+        final AtomicLong tick = new AtomicLong();
+        // Every read advances the clock by 1.5 microseconds, so each call takes exactly that long
+        final Clock steppingClock = new Clock() {
+            @Override
+            public long getTick() {
+                return tick.addAndGet(1_500);
+            }
+        };
+        try {
+            FunctionMetricsManager.reconfigure(options().clock(steppingClock).build());
+            myClass.myFunction(2, 3);
+            Assert.assertEquals(0, registry.timer(timerName).getSnapshot().getMax());
+
+            FunctionMetricsManager.reconfigure(options().clock(steppingClock).highPrecisionTiming(true).build());
+            myClass.myFunction(2, 3);
+            Assert.assertEquals(1_500, registry.timer(timerName).getSnapshot().getMax());
+        }
+        finally {
+            FunctionMetricsManager.reconfigure(options().build());
+        }
+    }
+
+    @Test
+    public void testParameterCardinalityLimit() throws Exception {
+        final MyClass myClass = new MyClass();
+        final String prefix = "phonepe.test.MyClass.parameterValidFunction.";
+        try {
+            FunctionMetricsManager.reconfigure(options().maxParameterCardinality(2).build());
+            // Values that do not produce a parameter string are neither recorded nor counted towards the limit
+            myClass.parameterValidFunction("1abc", "def");
+            myClass.parameterValidFunction("abc", "d e f");
+            myClass.parameterValidFunction("abc", "");
+            Assert.assertTrue(registry.getTimers(
+                    (name, metric) -> name.startsWith(prefix) && !name.equals(prefix + "success")
+                            && !name.equals(prefix + "failure") && !name.equals(prefix + "all")).isEmpty());
+
+            myClass.parameterValidFunction("abc", "def");
+            myClass.parameterValidFunction("ABC", "def");
+            myClass.parameterValidFunction("ghi", "jkl");
+            myClass.parameterValidFunction("mno", "pqr");
+            myClass.parameterValidFunction("stu", "vwx");
+            myClass.parameterValidFunction("ghi", "jkl");
+
+            Assert.assertEquals(2, registry.timer(prefix + "abc.def.success").getCount());
+            Assert.assertEquals(2, registry.timer(prefix + "ghi.jkl.success").getCount());
+            Assert.assertEquals(2, registry.timer(prefix + "other.success").getCount());
+            Assert.assertFalse(registry.getTimers().containsKey(prefix + "mno.pqr.success"));
+            Assert.assertFalse(registry.getTimers().containsKey(prefix + "stu.vwx.success"));
+        }
+        finally {
+            FunctionMetricsManager.reconfigure(options().build());
+        }
+    }
+
+    @Test
+    public void testIdleParameterTimerEviction() throws Exception {
+        final MyClass myClass = new MyClass();
+        try {
+            FunctionMetricsManager.reconfigure(options().parameterIdleTimeout(1, TimeUnit.HOURS).build());
+            myClass.parameterValidFunction("abc", "def");
+            Assert.assertEquals(0, IdleTimerEvictor.sweep());
+            Assert.assertTrue(registry.getTimers().containsKey(PARAMETERIZED_TIMER));
+
+            Assert.assertEquals(1, IdleTimerEvictor.sweep());
+            Assert.assertFalse(registry.getTimers().containsKey(PARAMETERIZED_TIMER));
+            Assert.assertTrue(registry.getTimers().containsKey("phonepe.test.MyClass.parameterValidFunction.success"));
+            Assert.assertEquals(1, registry.counter("phonepe.test." + IdleTimerEvictor.EVICTED_COUNTER).getCount());
+
+            myClass.parameterValidFunction("abc", "def");
+            Assert.assertEquals(1, registry.timer(PARAMETERIZED_TIMER).getCount());
+        }
+        finally {
+            FunctionMetricsManager.reconfigure(options().build());
+        }
+    }
+
+    @Test
+    public void testDeltaReporterExportsBuckets() throws Exception {
+        final MyClass myClass = new MyClass();
+        final List<String> reports = new ArrayList<>();
+        final DeltaReporter reporter = DeltaReporter.forRegistry(registry)
+                .filter((name, metric) -> name.startsWith("phonepe.test.MyClass.histogramFunction."))
+                .output(reports::add)
+                .build();
+        try {
+            myClass.histogramFunction();
+            myClass.histogramFunction();
+            reporter.report();
+            myClass.histogramFunction();
+            reporter.report();
+            Assert.assertEquals(2, reports.size());
+        }
+        finally {
+            reporter.close();
+        }
+        final String successLine = "phonepe.test.MyClass.histogramFunction.success count=";
+        Assert.assertTrue(reports.get(0).contains(successLine + "2i,b_"));
+        Assert.assertTrue(reports.get(1).contains(successLine + "1i,b_"));
+        final String secondSuccess = Arrays.stream(reports.get(1).split("\n"))
+                .filter(line -> line.startsWith(successLine))
+                .findFirst()
+                .orElseThrow(AssertionError::new);
+        // Exactly one bucket got a value since the first report
+        Assert.assertTrue(secondSuccess.matches(".* count=1i,b_\\d+=1i \\d+"));
+    }
+
+    @Test
+    public void testInFlightTracking() throws Exception {
+        final MyClass myClass = new MyClass();
+        final String prefix = "phonepe.test.MyClass.asyncFunction.";
+        try {
+            FunctionMetricsManager.reconfigure(options()
+                                                       .inFlightTracking(true)
+                                                       .asyncCompletionTiming(true)
+                                                       .build());
+            final CompletableFuture<String> first = new CompletableFuture<>();
+            final CompletableFuture<String> second = new CompletableFuture<>();
+            myClass.asyncFunction(first);
+            myClass.asyncFunction(second);
+            Assert.assertEquals(2L, registry.getGauges().get(prefix + "inFlight").getValue());
+            first.complete("done");
+            Assert.assertEquals(1L, registry.getGauges().get(prefix + "inFlight").getValue());
+            Assert.assertEquals(2L, registry.getGauges().get(prefix + "maxInFlight").getValue());
+            Assert.assertEquals(1L, registry.getGauges().get(prefix + "maxInFlight").getValue());
+            second.complete("done");
+            Assert.assertEquals(0L, registry.getGauges().get(prefix + "inFlight").getValue());
+
+            myClass.parameterValidFunction("abc", "def");
+            Assert.assertEquals(0L, registry.getGauges()
+                    .get("phonepe.test.MyClass.parameterValidFunction.abc.def.inFlight")
+                    .getValue());
+
+            // Gauges are registered again after removal
+            registry.removeMatching(MetricFilter.ALL);
+            myClass.asyncFunction(CompletableFuture.completedFuture("done"));
+            Assert.assertEquals(0L, registry.getGauges().get(prefix + "inFlight").getValue());
+        }
+        finally {
+            FunctionMetricsManager.reconfigure(options().build());
+        }
+    }
+
+    @Test
+    public void testUnsubscribedPublisherLeavesInFlight() throws Exception {
+        final MyClass myClass = new MyClass();
+        final String inFlightGauge = "phonepe.test.MyClass.publisherFunction.inFlight";
+        try {
+            FunctionMetricsManager.reconfigure(options()
+                                                       .inFlightTracking(true)
+                                                       .asyncCompletionTiming(true)
+                                                       .build());
+            // Never subscribed to, and dropped right away
+            myClass.publisherFunction(new SubmissionPublisher<>());
+            Assert.assertEquals(1L, registry.getGauges().get(inFlightGauge).getValue());
+
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!Long.valueOf(0L).equals(registry.getGauges().get(inFlightGauge).getValue())
+                    && System.nanoTime() < deadline) {
+                System.gc();
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(0L, registry.getGauges().get(inFlightGauge).getValue());
+        }
+        finally {
+            FunctionMetricsManager.reconfigure(options().build());
+        }
+    }
+
+    @Test
+    public void testPinningRegistrationWithoutCache() throws Exception {
+        final MyClass myClass = new MyClass();
+        try {
+            FunctionMetricsManager.reconfigure(options()
+                                                       .enableParameterCapture(false)
+                                                       .disableCacheOptimisation(true)
+                                                       .build());
+            myClass.uncachedFunction();
+            Assert.assertTrue(PinningMonitor.recordPinned(FunctionMetricsManager.config(), Collections.singletonList(
+                    PinningMonitor.frameKey(MyClass.class.getName(), "uncachedFunction"))));
+            Assert.assertEquals(1, registry.meter("phonepe.test.MyClass.uncachedFunction.pinned").getCount());
+        }
+        finally {
+            FunctionMetricsManager.reconfigure(options().build());
+        }
+    }
+
+    @Test
+    public void testDimensionalMetrics() throws Exception {
+        final MyClass myClass = new MyClass();
+        final String name = "phonepe.test.MyClass.parameterValidFunction.abc.def.success";
+        final List<String> reports = new ArrayList<>();
+        final DeltaReporter reporter = DeltaReporter.forRegistry(registry)
+                .filter((metricName, metric) -> metricName.startsWith("phonepe.test.MyClass.parameterValidFunction."))
+                .output(reports::add)
+                .tagged(true)
+                .build();
+        try {
+            FunctionMetricsManager.reconfigure(options().dimensionalMetrics(true).build());
+            myClass.parameterValidFunction("abc", "def");
+            Assert.assertTrue(registry.getTimers().containsKey(name));
+            Assert.assertTrue(FunctionMetricsManager.taggedMetrics().contains(name));
+
+            FunctionMetricsManager.reconfigure(options().dimensionalOnly(true).build());
+            myClass.parameterValidFunction("abc", "def");
+            myClass.parameterValidFunction("abc", "def");
+            Assert.assertFalse(registry.getTimers().containsKey(name));
+            final List<MetricTags> tags = new ArrayList<>();
+            FunctionMetricsManager.taggedMetrics().forEach((metricTags, metric) -> {
+                if (metricTags.getName().equals(name)) {
+                    tags.add(metricTags);
+                }
+            });
+            Assert.assertEquals(1, tags.size());
+            Assert.assertEquals("abc.def", tags.get(0).getTerms());
+            Assert.assertEquals(TimerDomain.SUCCESS, tags.get(0).getDomain());
+            Assert.assertEquals(2, FunctionMetricsManager.taggedMetrics().get(tags.get(0).getId()).getCount());
+
+            reporter.report();
+            Assert.assertEquals(1, reports.size());
+            Assert.assertTrue(reports.get(0).contains(
+                    "phonepe.test,class=MyClass,method=parameterValidFunction,domain=success,terms=abc.def count=2i "));
+            Assert.assertTrue(reports.get(0).contains(
+                    "phonepe.test,class=MyClass,method=parameterValidFunction,domain=all count=2i "));
+            Assert.assertFalse(reports.get(0).contains(name));
+        }
+        finally {
+            reporter.close();
+            FunctionMetricsManager.reconfigure(options().build());
+        }
+        Assert.assertFalse(FunctionMetricsManager.taggedMetrics().contains(name));
+    }
+
+    @Test
+    public void testDimensionalOnlyBufferedTimersAreFlushed() throws Exception {
+        final MyClass myClass = new MyClass();
+        final String name = "phonepe.test.MyClass.parameterValidFunction.abc.def.success";
+        try {
+            FunctionMetricsManager.reconfigure(options()
+                                                       .dimensionalOnly(true)
+                                                       .recordingMode(RecordingMode.BUFFERED)
+                                                       .build());
+            myClass.parameterValidFunction("abc", "def");
+            Assert.assertFalse(registry.getTimers().containsKey(name));
+            Assert.assertNotNull(FunctionMetricsManager.bufferedTimer(name));
+        }
+        finally {
+            FunctionMetricsManager.reconfigure(options().build());
+        }
+        Assert.assertNull(FunctionMetricsManager.bufferedTimer(name));
+    }
+
+    @Test
+    public void testNumericAndExtractedTerms() throws Exception {
+        final MyClass myClass = new MyClass();
+        myClass.numericTermFunction(3, true);
+        myClass.numericTermFunction(3, true);
+        myClass.numericTermFunction(123456, false);
+        myClass.numericTermFunction(-5, null);
+        Assert.assertEquals(2, registry.getTimers()
+                .get("phonepe.test.MyClass.numericTermFunction.3.true.success").getCount());
+        Assert.assertEquals(1, registry.getTimers()
+                .get("phonepe.test.MyClass.numericTermFunction.123456.false.success").getCount());
+        Assert.assertEquals(4, registry.getTimers().get("phonepe.test.MyClass.numericTermFunction.success").getCount());
+
+        myClass.extractedTermFunction(new MyClass.Request("some_tenant"));
+        myClass.extractedTermFunction(new MyClass.Request(null));
+        myClass.extractedTermFunction(null);
+        Assert.assertEquals(1, registry.getTimers()
+                .get("phonepe.test.MyClass.extractedTermFunction.someTenant.success").getCount());
+        Assert.assertEquals(3, registry.getTimers()
+                .get("phonepe.test.MyClass.extractedTermFunction.success").getCount());
+    }
+
+    @Test
+    public void testSlowCallCapture() throws Exception {
+        final MyClass myClass = new MyClass();
+        try {
+            FunctionMetricsManager.reconfigure(options()
+                                                       .slowCallThreshold(1, TimeUnit.NANOSECONDS)
+                                                       .slowCallCapacity(2)
+                                                       .build());
+            myClass.parameterValidFunction("abc", "def");
+            myClass.parameterValidFunction("ghi", "jkl");
+            myClass.parameterValidFunction("mno", "pqr");
+            final List<SlowCall> calls = FunctionMetricsManager.slowCalls("MyClass", "parameterValidFunction");
+            Assert.assertEquals(2, calls.size());
+            Assert.assertTrue(calls.get(0).getDurationNanos() >= calls.get(1).getDurationNanos());
+            Assert.assertNotNull(calls.get(0).getParameterString());
+            Assert.assertEquals(Thread.currentThread().getName(), calls.get(0).getThreadName());
+            Assert.assertNull(calls.get(0).getExceptionType());
+
+            try {
+                myClass.hybridFunction(true);
+                Assert.fail("Expected exception");
+            }
+            catch (IllegalStateException e) {
+                // Expected
+            }
+            final List<SlowCall> failures = FunctionMetricsManager.slowCalls("MyClass", "hybridFunction");
+            Assert.assertEquals(1, failures.size());
+            Assert.assertEquals(IllegalStateException.class.getName(), failures.get(0).getExceptionType());
+            Assert.assertNull(failures.get(0).getParameterString());
+            Assert.assertTrue(FunctionMetricsManager.slowCalls().containsAll(failures));
+        }
+        finally {
+            FunctionMetricsManager.reconfigure(options().build());
+        }
+        // Buffers are dropped with the changed capacity, and no calls are captured without a threshold
+        myClass.parameterValidFunction("abc", "def");
+        Assert.assertTrue(FunctionMetricsManager.slowCalls("MyClass", "parameterValidFunction").isEmpty());
+    }
+
     @Test
     public void testOverloadCaching() throws Exception {
         final MyClass myClass = new MyClass();
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Snapshot;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+/**
+ *
+ */
+public class HdrHistogramReservoirTest {
+
+    @Test
+    public void testBucketBoundsContainValues() {
+        final HistogramBuckets buckets = new HistogramBuckets(2, TimeUnit.HOURS.toNanos(1));
+        LongStream.concat(LongStream.range(0, 5000), LongStream.iterate(5000, v -> v * 3 + 7).limit(20))
+                .filter(value -> value <= buckets.getHighestTrackableValue())
+                .forEach(value -> {
+                    final int index = buckets.index(value);
+                    Assert.assertTrue(index < buckets.size());
+                    Assert.assertTrue(buckets.lowestValue(index) <= value);
+                    Assert.assertTrue(buckets.highestValue(index) >= value);
+                    // Two significant digits means less than 1% error
+                    Assert.assertTrue(buckets.highestValue(index) - buckets.lowestValue(index) <= value / 100);
+                });
+        Assert.assertEquals(buckets.index(buckets.getHighestTrackableValue()), buckets.index(Long.MAX_VALUE));
+        Assert.assertEquals(0, buckets.index(-1));
+    }
+
+    @Test
+    public void testPercentiles() {
+        final HdrHistogramReservoir reservoir = new HdrHistogramReservoir(3, 1, TimeUnit.MINUTES);
+        LongStream.rangeClosed(1, 10_000).forEach(value -> reservoir.update(value * 1000));
+        final Snapshot snapshot = reservoir.getSnapshot();
+        Assert.assertEquals(10_000, snapshot.size());
+        Assert.assertEquals(1000, snapshot.getMin());
+        Assert.assertEquals(10_000_000, snapshot.getMax(), 10_000);
+        Assert.assertEquals(5_000_000, snapshot.getMedian(), 5_000);
+        Assert.assertEquals(9_900_000, snapshot.get99thPercentile(), 9_900);
+        Assert.assertEquals(5_000_500, snapshot.getMean(), 5_000);
+    }
+
+    @Test
+    public void testIntervalReset() {
+        final AtomicLong tick = new AtomicLong();
+        final Clock clock = new Clock() {
+            @Override
+            public long getTick() {
+                return tick.get();
+            }
+        };
+        final HdrHistogramReservoir reservoir = new HdrHistogramReservoir(
+                new HistogramBuckets(2, 1_000_000), 10, TimeUnit.SECONDS, clock);
+        reservoir.update(100);
+        reservoir.update(200);
+        tick.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        // First interval is closed by this snapshot, but is still part of it
+        Assert.assertEquals(2, reservoir.getSnapshot().size());
+        reservoir.update(300);
+        tick.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        // First interval is dropped now, only the one with 300 remains
+        final Snapshot snapshot = reservoir.getSnapshot();
+        Assert.assertEquals(1, snapshot.size());
+        Assert.assertEquals(300, snapshot.getMin(), 3);
+    }
+
+    @Test
+    public void testTotalsSurviveIntervalReset() {
+        final AtomicLong tick = new AtomicLong();
+        final Clock clock = new Clock() {
+            @Override
+            public long getTick() {
+                return tick.get();
+            }
+        };
+        final HdrHistogramReservoir reservoir = new HdrHistogramReservoir(
+                new HistogramBuckets(2, 1_000_000), 10, TimeUnit.SECONDS, clock);
+        final long[] totals = new long[reservoir.getBuckets().size()];
+        reservoir.addTotalCounts(totals);
+        for (int i = 0; i < 3; i++) {
+            reservoir.update(100);
+            tick.addAndGet(TimeUnit.SECONDS.toNanos(11));
+            reservoir.getSnapshot();
+        }
+        Assert.assertEquals(1, reservoir.getSnapshot().size());
+        Arrays.fill(totals, 0);
+        reservoir.addTotalCounts(totals);
+        Assert.assertEquals(3, totals[reservoir.getBuckets().index(100)]);
+    }
+
+    @Test
+    public void testLongGapDropsStaleIntervals() {
+        final AtomicLong tick = new AtomicLong();
+        final Clock clock = new Clock() {
+            @Override
+            public long getTick() {
+                return tick.get();
+            }
+        };
+        final HdrHistogramReservoir reservoir = new HdrHistogramReservoir(
+                new HistogramBuckets(2, 1_000_000), 10, TimeUnit.SECONDS, clock);
+        final long[] totals = new long[reservoir.getBuckets().size()];
+        reservoir.addTotalCounts(totals);
+        reservoir.update(100);
+        reservoir.update(100);
+        Assert.assertEquals(2, reservoir.getSnapshot().size());
+        // More than two intervals without a snapshot, the values are older than a full interval
+        tick.addAndGet(TimeUnit.SECONDS.toNanos(25));
+        Assert.assertEquals(0, reservoir.getSnapshot().size());
+        reservoir.update(300);
+        Assert.assertEquals(1, reservoir.getSnapshot().size());
+        for (int i = 0; i < 3; i++) {
+            tick.addAndGet(TimeUnit.SECONDS.toNanos(11));
+            Assert.assertEquals(1, reservoir.getSnapshot().size());
+            reservoir.update(200);
+            Assert.assertEquals(2, reservoir.getSnapshot().size());
+        }
+        tick.addAndGet(TimeUnit.SECONDS.toNanos(25));
+        Assert.assertEquals(0, reservoir.getSnapshot().size());
+
+        Arrays.fill(totals, 0);
+        reservoir.addTotalCounts(totals);
+        Assert.assertEquals(2, totals[reservoir.getBuckets().index(100)]);
+        Assert.assertEquals(1, totals[reservoir.getBuckets().index(300)]);
+        Assert.assertEquals(3, totals[reservoir.getBuckets().index(200)]);
+    }
+}
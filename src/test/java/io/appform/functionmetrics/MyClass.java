@@ -19,6 +19,8 @@ package io.appform.functionmetrics;
 import com.google.common.base.Joiner;
 
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
 /**
  *
@@ -61,6 +63,16 @@ public class MyClass {
         System.out.printf("x = %d, y = %d%n", x, y);
     }
 
+    @MonitoredFunction(timerReservoirType = TimerReservoirType.HDR_HISTOGRAM, histogramPrecision = 6)
+    public void unsupportedPrecisionFunction() {
+        System.out.println("Unsupported precision");
+    }
+
+    @MonitoredFunction
+    public void enumTermFunction(@MetricTerm Region region) {
+        System.out.printf("region = %s%n", region);
+    }
+
     @MonitoredFunction(method = "parameterInvalidVarArgsFunction")
     public void parameterInvalidFunction(@MetricTerm String x, @MetricTerm String... y) {
         System.out.printf("x = %s, y = [%s]%n", x, Joiner.on(",").join(y));
@@ -71,6 +83,48 @@ public class MyClass {
         System.out.println("No args");
     }
 
+    @MonitoredFunction(timerReservoirType = TimerReservoirType.HDR_HISTOGRAM, histogramPrecision = 3)
+    public void histogramFunction() {
+        System.out.println("Histogram");
+    }
+
+    @MonitoredFunction(sampling = SamplingMode.ONE_IN_N, samplingInterval = 1_000_000)
+    public void sampledFunction() {
+    }
+
+    @MonitoredFunction
+    public CompletableFuture<String> asyncFunction(CompletableFuture<String> result) {
+        return result;
+    }
+
+    @MonitoredFunction
+    public Flow.Publisher<String> publisherFunction(Flow.Publisher<String> result) {
+        return result;
+    }
+
+    @MonitoredFunction
+    public void uncachedFunction() {
+    }
+
+    @MonitoredFunction
+    public void rethrowingFunction(RuntimeException e) {
+        throw e;
+    }
+
+    @MonitoredFunction(metricKind = MetricKind.METER)
+    public void meteredFunction(boolean fail) {
+        if (fail) {
+            throw new IllegalStateException("Metered failure");
+        }
+    }
+
+    @MonitoredFunction(metricKind = MetricKind.HYBRID)
+    public void hybridFunction(boolean fail) {
+        if (fail) {
+            throw new IllegalStateException("Hybrid failure");
+        }
+    }
+
     public void pubFunction(int i) {
         myFunction(i);
     }
@@ -90,4 +144,45 @@ public class MyClass {
     }
 
     void perfFunction() {}
+
+    @MonitoredFunction
+    public void numericTermFunction(@MetricTerm int shard, @MetricTerm(order = 1) Boolean priority) {
+        System.out.println("Shard " + shard);
+    }
+
+    @MonitoredFunction
+    public void extractedTermFunction(@MetricTerm(extractor = RequestTenant.class) Request request) {
+        System.out.println("Request " + request);
+    }
+
+    public static class Request {
+        private final String tenant;
+
+        public Request(String tenant) {
+            this.tenant = tenant;
+        }
+
+        public String getTenant() {
+            return tenant;
+        }
+    }
+
+    public static class RequestTenant implements TermExtractor<Request> {
+        @Override
+        public Object extract(Request request) {
+            return request.getTenant();
+        }
+    }
+
+    /**
+     * Shares its simple name with {@link java.util.ConcurrentModificationException}
+     */
+    public static class ConcurrentModificationException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    public enum Region {
+        NORTH_EAST,
+        SOUTH
+    }
 }
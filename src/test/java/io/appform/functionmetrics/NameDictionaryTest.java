@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ *
+ */
+public class NameDictionaryTest {
+
+    @Test
+    public void testSameNameSameId() {
+        final NameDictionary dictionary = new NameDictionary(100);
+        final int id = dictionary.id("MyClass");
+        Assert.assertEquals(id, dictionary.id(new String("MyClass")));
+        Assert.assertEquals("MyClass", dictionary.name(id));
+        Assert.assertNotEquals(id, dictionary.id("MyOtherClass"));
+        Assert.assertEquals(2, dictionary.size());
+    }
+
+    @Test
+    public void testUnknownId() {
+        final NameDictionary dictionary = new NameDictionary(100);
+        dictionary.id("MyClass");
+        Assert.assertNull(dictionary.name(NameDictionary.NO_ID));
+        Assert.assertNull(dictionary.name(1));
+        Assert.assertNull(dictionary.name(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testGrowth() {
+        final NameDictionary dictionary = new NameDictionary(1000);
+        final List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            ids.add(dictionary.id("name" + i));
+        }
+        for (int i = 0; i < 500; i++) {
+            Assert.assertEquals("name" + i, dictionary.name(ids.get(i)));
+            Assert.assertEquals((int) ids.get(i), dictionary.id("name" + i));
+        }
+        Assert.assertEquals(500, dictionary.size());
+    }
+
+    @Test
+    public void testFull() {
+        final NameDictionary dictionary = new NameDictionary(100);
+        final int id = dictionary.id("MyClass");
+        for (int i = 0; i < 200; i++) {
+            dictionary.id("name" + i);
+        }
+        Assert.assertEquals(100, dictionary.size());
+        Assert.assertEquals(NameDictionary.NO_ID, dictionary.id("name150"));
+        Assert.assertEquals(id, dictionary.id("MyClass"));
+        Assert.assertEquals("name98", dictionary.name(dictionary.id("name98")));
+        Assert.assertNull(dictionary.name(100));
+        Assert.assertEquals(100, dictionary.size());
+    }
+
+    @Test
+    public void testConcurrentRegistration() throws Exception {
+        final NameDictionary dictionary = new NameDictionary(10_000);
+        final int threads = 4;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        final List<CompletableFuture<List<Integer>>> futures = IntStream.range(0, threads)
+                .mapToObj(thread -> CompletableFuture.supplyAsync(() -> {
+                    try {
+                        barrier.await();
+                    }
+                    catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return IntStream.range(0, 1000)
+                            .mapToObj(i -> dictionary.id("name" + i))
+                            .collect(Collectors.toList());
+                }))
+                .collect(Collectors.toList());
+        final List<Integer> expected = futures.get(0).get();
+        for (CompletableFuture<List<Integer>> future : futures) {
+            Assert.assertEquals(expected, future.get());
+        }
+        Assert.assertEquals(1000, dictionary.size());
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals("name" + i, dictionary.name(expected.get(i)));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Snapshot;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ *
+ */
+public class OffHeapHistogramReservoirTest {
+
+    @Test
+    public void testMatchesHeapReservoir() {
+        final OffHeapHistogramReservoir offHeap = new OffHeapHistogramReservoir(3, 1, TimeUnit.MINUTES);
+        final HdrHistogramReservoir heap = new HdrHistogramReservoir(3, 1, TimeUnit.MINUTES);
+        LongStream.rangeClosed(1, 10_000).forEach(value -> {
+            offHeap.update(value * 1000);
+            heap.update(value * 1000);
+        });
+        final Snapshot snapshot = offHeap.getSnapshot();
+        final Snapshot expected = heap.getSnapshot();
+        Assert.assertEquals(10_000, snapshot.size());
+        Assert.assertArrayEquals(expected.getValues(), snapshot.getValues());
+        Assert.assertEquals(expected.get99thPercentile(), snapshot.get99thPercentile(), 0);
+    }
+
+    @Test
+    public void testPagesAllocatedOnUse() {
+        final OffHeapHistogramReservoir offHeap = new OffHeapHistogramReservoir(2, 1, TimeUnit.MINUTES);
+        Assert.assertEquals(0, offHeap.getOffHeapBytes());
+        Assert.assertEquals(0, offHeap.getSnapshot().size());
+        offHeap.update(TimeUnit.MILLISECONDS.toNanos(5));
+        final int pageBytes = offHeap.getOffHeapBytes();
+        Assert.assertTrue(pageBytes >= OffHeapHistogramReservoir.PAGE_BYTES);
+        Assert.assertTrue(pageBytes < OffHeapHistogramReservoir.PAGE_BYTES + Long.BYTES);
+        offHeap.update(TimeUnit.MILLISECONDS.toNanos(5) + 1);
+        Assert.assertEquals(pageBytes, offHeap.getOffHeapBytes());
+        // 1 ms to 100 ms spans seven powers of two, of 128 buckets each at precision 2
+        LongStream.rangeClosed(1, 100).forEach(millis -> offHeap.update(TimeUnit.MILLISECONDS.toNanos(millis)));
+        Assert.assertTrue(offHeap.getOffHeapBytes() <= 16 * pageBytes);
+        Assert.assertEquals(102, offHeap.getSnapshot().size());
+        final long[] totals = new long[offHeap.getBuckets().size()];
+        offHeap.addTotalCounts(totals);
+        Assert.assertEquals(102, Arrays.stream(totals).sum());
+    }
+
+    @Test
+    public void testIntervalsReuseSlots() {
+        final AtomicLong tick = new AtomicLong();
+        final Clock clock = new Clock() {
+            @Override
+            public long getTick() {
+                return tick.get();
+            }
+        };
+        final OffHeapHistogramReservoir reservoir = new OffHeapHistogramReservoir(
+                new HistogramBuckets(2, 1_000_000), 10, TimeUnit.SECONDS, clock);
+        for (int interval = 0; interval < 5; interval++) {
+            reservoir.update(100 * (interval + 1));
+            reservoir.update(100 * (interval + 1));
+            // Current interval plus the last closed one, which must not carry counts from reused slots
+            Assert.assertEquals(interval == 0 ? 2 : 4, reservoir.getSnapshot().size());
+            tick.addAndGet(TimeUnit.SECONDS.toNanos(11));
+            // Closes the interval and drops the one before it
+            Assert.assertEquals(2, reservoir.getSnapshot().size());
+        }
+        tick.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        Assert.assertEquals(0, reservoir.getSnapshot().size());
+    }
+
+    @Test
+    public void testConcurrentUpdatesAreNotLost() throws Exception {
+        final OffHeapHistogramReservoir reservoir = new OffHeapHistogramReservoir(2, 1, TimeUnit.HOURS);
+        final int numThreads = 8;
+        final int perThread = 10_000;
+        final ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        IntStream.range(0, numThreads)
+                .forEach(i -> executorService.submit(
+                        () -> IntStream.range(0, perThread).forEach(j -> reservoir.update(j % 16))));
+        executorService.shutdown();
+        Assert.assertTrue(executorService.awaitTermination(1, TimeUnit.MINUTES));
+        Assert.assertEquals(numThreads * perThread, reservoir.getSnapshot().size());
+    }
+
+    @Test
+    public void testLongGapDropsStaleIntervals() {
+        final AtomicLong tick = new AtomicLong();
+        final Clock clock = new Clock() {
+            @Override
+            public long getTick() {
+                return tick.get();
+            }
+        };
+        final OffHeapHistogramReservoir reservoir = new OffHeapHistogramReservoir(
+                new HistogramBuckets(2, 1_000_000), 10, TimeUnit.SECONDS, clock);
+        final long[] totals = new long[reservoir.getBuckets().size()];
+        reservoir.addTotalCounts(totals);
+        reservoir.update(100);
+        reservoir.update(100);
+        Assert.assertEquals(2, reservoir.getSnapshot().size());
+        // More than two intervals without a snapshot, the values are older than a full interval
+        tick.addAndGet(TimeUnit.SECONDS.toNanos(25));
+        Assert.assertEquals(0, reservoir.getSnapshot().size());
+        reservoir.update(300);
+        Assert.assertEquals(1, reservoir.getSnapshot().size());
+        for (int i = 0; i < 3; i++) {
+            tick.addAndGet(TimeUnit.SECONDS.toNanos(11));
+            Assert.assertEquals(1, reservoir.getSnapshot().size());
+            reservoir.update(200);
+            Assert.assertEquals(2, reservoir.getSnapshot().size());
+        }
+        tick.addAndGet(TimeUnit.SECONDS.toNanos(25));
+        Assert.assertEquals(0, reservoir.getSnapshot().size());
+
+        Arrays.fill(totals, 0);
+        reservoir.addTotalCounts(totals);
+        Assert.assertEquals(2, totals[reservoir.getBuckets().index(100)]);
+        Assert.assertEquals(1, totals[reservoir.getBuckets().index(300)]);
+        Assert.assertEquals(3, totals[reservoir.getBuckets().index(200)]);
+    }
+}
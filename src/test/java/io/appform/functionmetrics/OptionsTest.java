@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ */
+public class OptionsTest {
+
+    @Test
+    public void testHistogramPrecision() {
+        Assert.assertEquals(2, new Options.OptionsBuilder().build().getHistogramPrecision());
+        Assert.assertEquals(2, new Options.OptionsBuilder().histogramPrecision(0).build().getHistogramPrecision());
+        Assert.assertEquals(5, new Options.OptionsBuilder().histogramPrecision(5).build().getHistogramPrecision());
+        try {
+            new Options.OptionsBuilder().histogramPrecision(6).build();
+            Assert.fail("Unsupported precision should have been rejected");
+        }
+        catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("between 1 and 5"));
+        }
+    }
+
+    @Test
+    public void testHistogramIntervalRoundedUp() {
+        Assert.assertEquals(1, new Options.OptionsBuilder()
+                .histogramInterval(500, TimeUnit.MILLISECONDS)
+                .build()
+                .getHistogramIntervalSeconds());
+        Assert.assertEquals(2, new Options.OptionsBuilder()
+                .histogramInterval(1500, TimeUnit.MILLISECONDS)
+                .build()
+                .getHistogramIntervalSeconds());
+        Assert.assertEquals(120, new Options.OptionsBuilder()
+                .histogramInterval(2, TimeUnit.MINUTES)
+                .build()
+                .getHistogramIntervalSeconds());
+    }
+
+    @Test
+    public void testSlidingWindowRoundedUp() {
+        Assert.assertEquals(1, new Options.OptionsBuilder()
+                .slidingWindow(500, TimeUnit.MILLISECONDS)
+                .build()
+                .getSlidingWindowSeconds());
+        Assert.assertEquals(30, new Options.OptionsBuilder()
+                .slidingWindow(30, TimeUnit.SECONDS)
+                .build()
+                .getSlidingWindowSeconds());
+    }
+
+    @Test
+    public void testMethodHistogramPrecisionCapped() {
+        final ReservoirConfig config = new ReservoirConfig(TimerReservoirType.HDR_HISTOGRAM, 0, 0, 0, 6);
+        Assert.assertEquals(HistogramBuckets.MAX_SIGNIFICANT_DIGITS,
+                            config.getHistogramPrecision(new Options.OptionsBuilder().build()));
+    }
+
+    @Test
+    public void testParameterCardinalityBoundedByDefault() {
+        Assert.assertEquals(Options.DEFAULT_MAX_PARAMETER_CARDINALITY,
+                            new Options.OptionsBuilder().enableParameterCapture(true).build()
+                                    .getMaxParameterCardinality());
+        Assert.assertEquals(Integer.MAX_VALUE, new Options.OptionsBuilder()
+                .maxParameterCardinality(Integer.MAX_VALUE)
+                .build()
+                .getMaxParameterCardinality());
+    }
+}
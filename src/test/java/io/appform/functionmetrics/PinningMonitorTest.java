@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ *
+ */
+public class PinningMonitorTest {
+
+    @Test
+    public void testPinnedEventAttributedToInnermostMonitoredFunction() {
+        final MetricRegistry registry = new MetricRegistry();
+        final ConfigSnapshot config = new ConfigSnapshot(registry, "pinning.test", new Options());
+        PinningMonitor.register("io.test.Outer", "handle",
+                                new MethodData("Outer", "handle", Collections.emptyList()));
+        PinningMonitor.register("io.test.Inner", "work",
+                                new MethodData("Inner", "customWork", Collections.emptyList()));
+
+        Assert.assertTrue(PinningMonitor.recordPinned(config, Arrays.asList(
+                PinningMonitor.frameKey("java.lang.Object", "wait"),
+                PinningMonitor.frameKey("io.test.Inner", "work"),
+                PinningMonitor.frameKey("io.test.Outer", "handle"))));
+        Assert.assertFalse(PinningMonitor.recordPinned(config, Collections.singletonList(
+                PinningMonitor.frameKey("io.test.Other", "work"))));
+
+        Assert.assertEquals(1, registry.meter("pinning.test.Inner.customWork.pinned").getCount());
+        Assert.assertFalse(registry.getMeters().containsKey("pinning.test.Outer.handle.pinned"));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Meter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ *
+ */
+public class SamplerTest {
+
+    private static class ManualClock extends Clock {
+        private long tick;
+
+        @Override
+        public long getTick() {
+            return tick;
+        }
+    }
+
+    @Test
+    public void testOneInN() {
+        final Sampler sampler = new Sampler.OneInNSampler(10);
+        final long sampled = IntStream.range(0, 100).filter(i -> sampler.sample()).count();
+        Assert.assertEquals(10, sampled);
+    }
+
+    @Test
+    public void testAdaptiveFollowsCallRate() {
+        final ManualClock clock = new ManualClock();
+        final Sampler.AdaptiveSampler sampler = new Sampler.AdaptiveSampler(100, clock);
+        IntStream.range(0, 10_000).forEach(i -> sampler.sample());
+        Assert.assertEquals(1.0, sampler.getProbability(), 0.0);
+
+        clock.tick += TimeUnit.SECONDS.toNanos(1);
+        Assert.assertTrue(sampler.sample());
+        Assert.assertEquals(0.01, sampler.getProbability(), 0.001);
+        final long sampled = IntStream.range(0, 100_000).filter(i -> sampler.sample()).count();
+        Assert.assertTrue(sampled > 500 && sampled < 1500);
+
+        // Calls slowing down bring the probability back up
+        clock.tick += TimeUnit.SECONDS.toNanos(10_000);
+        while (!sampler.sample()) {
+            // wait for a sampled call to trigger the adjustment
+        }
+        Assert.assertEquals(1.0, sampler.getProbability(), 0.0);
+    }
+
+    @Test
+    public void testSkippedCallsAreCounted() {
+        final SampledTimer timer = new SampledTimer(new HdrHistogramReservoir(2, 60, TimeUnit.SECONDS),
+                                                    Clock.defaultClock());
+        timer.update(5, TimeUnit.MILLISECONDS);
+        timer.skip();
+        timer.skip();
+        Assert.assertEquals(3, timer.getCount());
+        Assert.assertEquals(1, timer.getSnapshot().size());
+        Assert.assertEquals(2, timer.getUnsampledCount());
+    }
+
+    @Test
+    public void testSkippedCallsFoldedOnTick() {
+        final ManualClock clock = new ManualClock();
+        final SampledTimer timer = new SampledTimer(new HdrHistogramReservoir(2, 60, TimeUnit.SECONDS), clock);
+        final Meter reference = new Meter(clock);
+        // Ten calls a second for a minute, with nothing reading the timer in between
+        for (int second = 0; second < 60; second++) {
+            clock.tick += TimeUnit.SECONDS.toNanos(1);
+            for (int i = 0; i < 10; i++) {
+                timer.skip();
+                reference.mark();
+            }
+        }
+        final double expected = reference.getOneMinuteRate();
+        Assert.assertEquals(expected, timer.getOneMinuteRate(), 0.15 * expected);
+        Assert.assertEquals(600, timer.getCount());
+    }
+}
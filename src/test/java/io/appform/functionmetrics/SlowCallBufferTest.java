@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ *
+ */
+public class SlowCallBufferTest {
+
+    @Test
+    public void testKeepsSlowestCalls() {
+        final SlowCallBuffer buffer = new SlowCallBuffer(3, 1000);
+        final long now = System.currentTimeMillis();
+        IntStream.of(5, 1, 9, 3, 7, 2).forEach(duration -> buffer.offer(call(duration, now)));
+        Assert.assertEquals(List.of(9L, 7L, 5L), durations(buffer.snapshot(now)));
+    }
+
+    @Test
+    public void testWindow() {
+        final SlowCallBuffer buffer = new SlowCallBuffer(2, 1000);
+        final long now = System.currentTimeMillis();
+        buffer.offer(call(10, now - 2000));
+        buffer.offer(call(20, now - 500));
+        Assert.assertEquals(List.of(20L), durations(buffer.snapshot(now)));
+
+        // Expired calls give up their slot even to faster calls
+        buffer.offer(call(1, now));
+        Assert.assertEquals(List.of(20L, 1L), durations(buffer.snapshot(now)));
+        buffer.offer(call(2, now));
+        Assert.assertEquals(List.of(20L, 2L), durations(buffer.snapshot(now)));
+        Assert.assertEquals(List.of(2L), durations(buffer.snapshot(now + 600)));
+    }
+
+    @Test
+    public void testConcurrentOffers() throws Exception {
+        final SlowCallBuffer buffer = new SlowCallBuffer(5, TimeUnit.MINUTES.toMillis(1));
+        final long now = System.currentTimeMillis();
+        final ExecutorService executorService = Executors.newFixedThreadPool(4);
+        IntStream.rangeClosed(1, 10_000)
+                .forEach(duration -> executorService.submit(() -> buffer.offer(call(duration, now))));
+        executorService.shutdown();
+        Assert.assertTrue(executorService.awaitTermination(1, TimeUnit.MINUTES));
+        final List<Long> durations = durations(buffer.snapshot(now));
+        Assert.assertEquals(5, durations.size());
+        Assert.assertEquals(10_000L, (long) durations.get(0));
+    }
+
+    private static SlowCall call(long durationNanos, long timestampMillis) {
+        return new SlowCall("MyClass", "myFunction", null, durationNanos, timestampMillis, "main", null);
+    }
+
+    private static List<Long> durations(List<SlowCall> calls) {
+        return calls.stream().map(SlowCall::getDurationNanos).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metered;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ *
+ */
+public class TaggedMetricsTest {
+
+    @Test
+    public void testInterning() {
+        final TaggedMetrics taggedMetrics = new TaggedMetrics();
+        final Meter meter = new Meter();
+        Assert.assertSame(meter, taggedMetrics.computeIfAbsent(tags("myFunction", "abc"), () -> meter));
+        Assert.assertSame(meter, taggedMetrics.computeIfAbsent(tags("myFunction", "abc"), Meter::new));
+        Assert.assertSame(meter, taggedMetrics.get(tags("myFunction", "abc")));
+        Assert.assertNull(taggedMetrics.get(tags("myFunction", "def")));
+        Assert.assertTrue(taggedMetrics.contains("test.MyClass.myFunction.abc.success"));
+    }
+
+    @Test
+    public void testIdsAreReused() {
+        final TaggedMetrics taggedMetrics = new TaggedMetrics();
+        IntStream.range(0, 100).forEach(i -> taggedMetrics.put(tags("f" + i, null), new Meter()));
+        final List<MetricTags> interned = new ArrayList<>();
+        taggedMetrics.forEach((tags, metric) -> interned.add(tags));
+        Assert.assertEquals(100, interned.size());
+        final MetricTags removed = interned.get(10);
+        Assert.assertEquals(10, removed.getId());
+
+        Assert.assertTrue(taggedMetrics.remove(removed.getName()));
+        Assert.assertFalse(taggedMetrics.remove(removed.getName()));
+        Assert.assertNull(taggedMetrics.get(10));
+
+        final Meter meter = new Meter();
+        taggedMetrics.put(tags("other", null), meter);
+        Assert.assertSame(meter, taggedMetrics.get(10));
+        // Handles to removed tags do not resolve to the metric now using their id
+        Assert.assertNull(taggedMetrics.get(removed));
+    }
+
+    @Test
+    public void testClear() {
+        final TaggedMetrics taggedMetrics = new TaggedMetrics();
+        taggedMetrics.put(tags("myFunction", null), new Meter());
+        taggedMetrics.clear();
+        final List<Metered> metrics = new ArrayList<>();
+        taggedMetrics.forEach((tags, metric) -> metrics.add(metric));
+        Assert.assertTrue(metrics.isEmpty());
+        Assert.assertFalse(taggedMetrics.contains("test.MyClass.myFunction.success"));
+    }
+
+    private static MetricTags tags(String methodName, String terms) {
+        final String name = "test.MyClass." + methodName + (terms != null ? "." + terms : "") + ".success";
+        return new MetricTags("test", "MyClass", methodName, TimerDomain.SUCCESS, terms, name, -1);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.appform.functionmetrics;
+
+import com.google.common.base.CaseFormat;
+import com.google.common.base.Converter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ *
+ */
+public class TermDictionaryTest {
+
+    @Test
+    public void testConvertsOnce() {
+        final TermDictionary dictionary
+                = new TermDictionary(CaseFormat.LOWER_UNDERSCORE.converterTo(CaseFormat.LOWER_CAMEL));
+        final String term = dictionary.term("some_value");
+        Assert.assertEquals("someValue", term);
+        Assert.assertSame(term, dictionary.term(new String("some_value")));
+        Assert.assertEquals("seconds", dictionary.term(TimeUnit.SECONDS));
+        Assert.assertEquals("", dictionary.term("not valid"));
+        Assert.assertEquals("", dictionary.term(4.2));
+        Assert.assertEquals("", dictionary.term(null));
+    }
+
+    @Test
+    public void testNumericTerms() {
+        final TermDictionary dictionary
+                = new TermDictionary(CaseFormat.LOWER_UNDERSCORE.converterTo(CaseFormat.LOWER_CAMEL));
+        Assert.assertEquals("42", dictionary.term(42));
+        Assert.assertSame(dictionary.term(42L), dictionary.term((byte) 42));
+        Assert.assertEquals("-7", dictionary.term((short) -7));
+        Assert.assertEquals("true", dictionary.term(Boolean.TRUE));
+        final String large = dictionary.term(Long.MIN_VALUE);
+        Assert.assertEquals(Long.toString(Long.MIN_VALUE), large);
+        Assert.assertSame(large, dictionary.term(Long.MIN_VALUE));
+        // Grows the primitive keyed map a few times
+        LongStream.range(1_000_000, 1_005_000).forEach(dictionary::term);
+        LongStream.range(1_000_000, 1_005_000)
+                .forEach(value -> Assert.assertSame(dictionary.term(value), dictionary.term(Long.valueOf(value))));
+        Assert.assertSame(large, dictionary.term(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void testValidatorMatchesPattern() {
+        final List<String> values = new ArrayList<>(Arrays.asList("", " ", "a", "_", "-a", "a-b", "a b", "a\n", "9a",
+                                                                  "a9", "Zz_-09", "\u00e9t\u00e9", "a.b"));
+        for (char c = 0; c < 256; c++) {
+            values.add(String.valueOf(c));
+            values.add("a" + c);
+        }
+        values.forEach(value -> Assert.assertEquals(
+                value, FunctionMetricConstants.VALID_PARAM_VALUE_PATTERN.matcher(value).matches(),
+                FunctionMetricConstants.isValidParamValue(value)));
+    }
+
+    @Test
+    public void testEnumTerms() {
+        final TermDictionary dictionary
+                = new TermDictionary(CaseFormat.UPPER_UNDERSCORE.converterTo(CaseFormat.LOWER_CAMEL));
+        Assert.assertEquals("nanoseconds", dictionary.term(TimeUnit.NANOSECONDS));
+        Assert.assertEquals("timerReservoirType", dictionary.term(Term.TIMER_RESERVOIR_TYPE));
+        Assert.assertEquals("", dictionary.term(Term.NOT$VALID));
+        Assert.assertSame(dictionary.term(TimeUnit.DAYS), dictionary.term(TimeUnit.DAYS));
+    }
+
+    @Test
+    public void testConvertEnumsUpFront() {
+        final AtomicInteger conversions = new AtomicInteger();
+        final TermDictionary dictionary = new TermDictionary(Converter.from(value -> {
+            conversions.incrementAndGet();
+            return value.toLowerCase();
+        }, value -> value));
+        dictionary.convertEnums(Arrays.asList(TimeUnit.class, String.class));
+        Assert.assertEquals(TimeUnit.values().length, conversions.get());
+        Assert.assertEquals("days", dictionary.term(TimeUnit.DAYS));
+        dictionary.convertEnums(Collections.singletonList(TimeUnit.class));
+        Assert.assertEquals(TimeUnit.values().length, conversions.get());
+        // Enums that were not converted up front are converted on first use, invalid constants skip the converter
+        Assert.assertEquals("timer_reservoir_type", dictionary.term(Term.TIMER_RESERVOIR_TYPE));
+        Assert.assertEquals(TimeUnit.values().length + 1, conversions.get());
+    }
+
+    @Test
+    public void testRecentTermsOnceFull() {
+        final TermDictionary dictionary
+                = new TermDictionary(CaseFormat.LOWER_UNDERSCORE.converterTo(CaseFormat.LOWER_CAMEL));
+        IntStream.range(0, TermDictionary.MAX_SIZE).forEach(i -> dictionary.term("value_" + i));
+        final String term = dictionary.term("one_more");
+        Assert.assertEquals("oneMore", term);
+        Assert.assertSame(term, dictionary.term(new String("one_more")));
+        Assert.assertEquals("", dictionary.term("not valid"));
+    }
+
+    private enum Term {
+        TIMER_RESERVOIR_TYPE,
+        // Constant names are validated, not their string representation
+        NOT$VALID {
+            @Override
+            public String toString() {
+                return "valid";
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2019 Santanu Sinha <santanu.sinha@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.appform.functionmetrics.processor;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+import com.google.common.base.CaseFormat;
+import io.appform.functionmetrics.FunctionInvocation;
+import io.appform.functionmetrics.FunctionMetricsManager;
+import io.appform.functionmetrics.Options;
+import io.appform.functionmetrics.TimerDomain;
+import io.appform.functionmetrics.TimerReservoirType;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ */
+public class MonitoredFunctionProcessorTest {
+    private static final String SOURCE = "package sample;\n"
+            + "import io.appform.functionmetrics.MetricTerm;\n"
+            + "import io.appform.functionmetrics.MonitoredFunction;\n"
+            + "public class Sample<T extends Comparable<T>> {\n"
+            + "    private final String name;\n"
+            + "    public Sample(String name) { this.name = name; }\n"
+            + "    @MonitoredFunction\n"
+            + "    public String greet(@MetricTerm String tenant, int times) throws java.io.IOException {\n"
+            + "        if (times < 0) { throw new java.io.IOException(\"negative\"); }\n"
+            + "        return name + \":\" + tenant + \":\" + times;\n"
+            + "    }\n"
+            + "    @MonitoredFunction(method = \"sumAll\", slidingWindowSeconds = 30)\n"
+            + "    protected <R extends Number> long sum(R first, R... rest) {\n"
+            + "        long total = first.longValue();\n"
+            + "        for (R value : rest) { total += value.longValue(); }\n"
+            + "        return total;\n"
+            + "    }\n"
+            + "    @MonitoredFunction\n"
+            + "    private void hidden() {}\n"
+            + "    @MonitoredFunction\n"
+            + "    public void route(@MetricTerm(extractor = Length.class) String key, @MetricTerm int shard) {}\n"
+            + "    @MonitoredFunction\n"
+            + "    public void schedule(@MetricTerm Mode mode, @MetricTerm java.util.concurrent.TimeUnit unit) {}\n"
+            + "    public enum Mode { FAST_PATH, SLOW_PATH }\n"
+            + "    public static class Length implements io.appform.functionmetrics.TermExtractor<String> {\n"
+            + "        public Object extract(String value) { return value.length(); }\n"
+            + "    }\n"
+            + "}\n";
+
+    private static final MetricRegistry registry = SharedMetricRegistries.getOrCreate("test-metrics");
+
+    @BeforeClass
+    public static void setup() {
+        FunctionMetricsManager.initialize(
+                "phonepe.test",
+                registry,
+                new Options.OptionsBuilder()
+                        .enableParameterCapture(true)
+                        .caseFormatConverter(CaseFormat.LOWER_UNDERSCORE.converterTo(CaseFormat.LOWER_CAMEL))
+                        .timerReservoirType(TimerReservoirType.DECAYING)
+                        .build());
+    }
+
+    @Test
+    public void testGeneratedWrapper() throws Exception {
+        final Path dir = Files.createTempDirectory("fm-processor");
+        final Path sourceFile = dir.resolve("sample/Sample.java");
+        Files.createDirectories(sourceFile.getParent());
+        Files.write(sourceFile, SOURCE.getBytes(StandardCharsets.UTF_8));
+
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        final int result = compiler.run(null, null, errors,
+                                        "-classpath", System.getProperty("surefire.test.class.path",
+                                                                           System.getProperty("java.class.path")),
+                                        "-processor", MonitoredFunctionProcessor.class.getName(),
+                                        "-d", dir.toString(),
+                                        "-s", dir.toString(),
+                                        sourceFile.toString());
+        final String diagnostics = errors.toString(StandardCharsets.UTF_8.name());
+        Assert.assertEquals(diagnostics, 0, result);
+        Assert.assertTrue(diagnostics.contains("method will not be monitored"));
+        Assert.assertTrue(Files.exists(dir.resolve("sample/SampleMonitored.java")));
+        // Enum terms are converted when the method data is created
+        Assert.assertTrue(new String(Files.readAllBytes(dir.resolve("sample/SampleMonitored.java")),
+                                     StandardCharsets.UTF_8)
+                                  .contains("java.util.Arrays.<Class<?>>asList(sample.Sample.Mode.class, "
+                                                    + "java.util.concurrent.TimeUnit.class)"));
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{dir.toUri().toURL()},
+                                                        getClass().getClassLoader())) {
+            final Class<?> generated = loader.loadClass("sample.SampleMonitored");
+            final Object sample = generated.getConstructor(String.class).newInstance("x");
+            final Method greet = generated.getMethod("greet", String.class, int.class);
+            Assert.assertEquals("x:tenant_one:2", greet.invoke(sample, "tenant_one", 2));
+            try {
+                greet.invoke(sample, "tenant_one", -1);
+                Assert.fail("Exception should have been propagated");
+            }
+            catch (InvocationTargetException e) {
+                Assert.assertEquals("negative", e.getCause().getMessage());
+            }
+            final Method sum = generated.getDeclaredMethod("sum", Number.class, Number[].class);
+            sum.setAccessible(true);
+            Assert.assertEquals(6L, sum.invoke(sample, 1, new Integer[]{2, 3}));
+            generated.getMethod("route", String.class, int.class).invoke(sample, "abc", 7);
+            final Class<?> mode = loader.loadClass("sample.Sample$Mode");
+            generated.getMethod("schedule", mode, TimeUnit.class)
+                    .invoke(sample, mode.getEnumConstants()[0], TimeUnit.SECONDS);
+        }
+
+        final FunctionInvocation greetInvocation = new FunctionInvocation("Sample", "greet", "tenantOne");
+        final List<Timer> successTimers = FunctionMetricsManager.timers(TimerDomain.SUCCESS, greetInvocation);
+        Assert.assertEquals(2, successTimers.size());
+        successTimers.forEach(timer -> Assert.assertEquals(1, timer.getCount()));
+        final List<Timer> failureTimers = FunctionMetricsManager.timers(TimerDomain.FAILURE, greetInvocation);
+        failureTimers.forEach(timer -> Assert.assertEquals(1, timer.getCount()));
+        final List<Timer> allTimers = FunctionMetricsManager.timers(TimerDomain.ALL, greetInvocation);
+        allTimers.forEach(timer -> Assert.assertEquals(2, timer.getCount()));
+
+        final List<Timer> sumTimers = FunctionMetricsManager.timers(TimerDomain.SUCCESS,
+                                                                    new FunctionInvocation("Sample", "sumAll", ""));
+        Assert.assertEquals(1, sumTimers.get(0).getCount());
+
+        final List<Timer> routeTimers = FunctionMetricsManager.timers(TimerDomain.SUCCESS,
+                                                                      new FunctionInvocation("Sample", "route", "3.7"));
+        Assert.assertEquals(2, routeTimers.size());
+        Assert.assertEquals(1, routeTimers.get(1).getCount());
+
+        final List<Timer> scheduleTimers
+                = FunctionMetricsManager.timers(TimerDomain.SUCCESS,
+                                                new FunctionInvocation("Sample", "schedule", "fastPath.seconds"));
+        Assert.assertEquals(2, scheduleTimers.size());
+        Assert.assertEquals(1, scheduleTimers.get(1).getCount());
+    }
+
+    @Test
+    public void testUnsupportedHistogramPrecisionRejected() throws Exception {
+        final Path dir = Files.createTempDirectory("fm-processor");
+        final Path sourceFile = dir.resolve("sample/Precise.java");
+        Files.createDirectories(sourceFile.getParent());
+        Files.write(sourceFile, ("package sample;\n"
+                + "import io.appform.functionmetrics.MonitoredFunction;\n"
+                + "public class Precise {\n"
+                + "    @MonitoredFunction(histogramPrecision = 6)\n"
+                + "    public void run() {}\n"
+                + "}\n").getBytes(StandardCharsets.UTF_8));
+
+        final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        final int result = ToolProvider.getSystemJavaCompiler()
+                .run(null, null, errors,
+                     "-classpath", System.getProperty("surefire.test.class.path",
+                                                      System.getProperty("java.class.path")),
+                     "-processor", MonitoredFunctionProcessor.class.getName(),
+                     "-d", dir.toString(),
+                     "-s", dir.toString(),
+                     sourceFile.toString());
+        final String diagnostics = errors.toString(StandardCharsets.UTF_8.name());
+        Assert.assertNotEquals(diagnostics, 0, result);
+        Assert.assertTrue(diagnostics, diagnostics.contains("Histogram precision must be between 1 and 5"));
+    }
+}